@@ -0,0 +1,208 @@
+package chess;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Classifies large batches of FEN positions in parallel: check, checkmate, stalemate,
+ * legal move count and material balance.
+ *
+ * A batch is split recursively across a {@link ForkJoinPool}; each leaf works through a run
+ * of positions on its worker's scratch board, so the board is refilled rather than allocated
+ * per position. Results can be collected in input order or streamed to a consumer, either in
+ * input order or as soon as each run completes.
+ */
+public class BatchAnalyzer implements AutoCloseable {
+    private static final int LEAF_SIZE = 64;
+    private static final ThreadLocal<Board> SCRATCH = ThreadLocal.withInitial(Board::new);
+    private static final ThreadLocal<int[]> MOVES = ThreadLocal.withInitial(() -> new int[Game.MAX_MOVES]);
+
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+
+    /** Analyze on the common pool. */
+    public BatchAnalyzer() {
+        this.pool = ForkJoinPool.commonPool();
+        this.ownsPool = false;
+    }
+
+    /** Analyze on a dedicated pool with the given number of worker threads. */
+    public BatchAnalyzer(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.ownsPool = true;
+    }
+
+    /** Analysis of one position; positions that fail to parse carry an error instead. */
+    public static final class Result {
+        private final int index;
+        private final String fen;
+        private final boolean check;
+        private final boolean checkmate;
+        private final boolean stalemate;
+        private final int legalMoveCount;
+        private final int materialBalance;
+        private final String error;
+
+        Result(int index, String fen, boolean check, boolean checkmate, boolean stalemate,
+               int legalMoveCount, int materialBalance, String error) {
+            this.index = index;
+            this.fen = fen;
+            this.check = check;
+            this.checkmate = checkmate;
+            this.stalemate = stalemate;
+            this.legalMoveCount = legalMoveCount;
+            this.materialBalance = materialBalance;
+            this.error = error;
+        }
+
+        /** Position of this result's FEN in the submitted batch. */
+        public int getIndex() { return index; }
+        public String getFen() { return fen; }
+        public boolean isCheck() { return check; }
+        public boolean isCheckmate() { return checkmate; }
+        public boolean isStalemate() { return stalemate; }
+        public int getLegalMoveCount() { return legalMoveCount; }
+        /** White material minus black material in pawns (P=1, N=B=3, R=5, Q=9). */
+        public int getMaterialBalance() { return materialBalance; }
+        /** Why the position could not be analyzed, or null. */
+        public String getError() { return error; }
+
+        @Override
+        public String toString() {
+            if (error != null) return index + ": error " + error;
+            return index + ": moves=" + legalMoveCount + " material=" + materialBalance
+                    + (checkmate ? " checkmate" : check ? " check" : "") + (stalemate ? " stalemate" : "");
+        }
+    }
+
+    /** Analyze every position and return the results in input order. */
+    public List<Result> analyze(List<String> fens) {
+        Result[] results = new Result[fens.size()];
+        pool.invoke(new Split(fens, 0, fens.size(), results, null));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Analyze every position, handing each result to {@code sink} as it becomes available,
+     * and return when the whole batch is done. With {@code inOrder} the sink sees results in
+     * input order, one call at a time; otherwise it is called from the worker threads as runs
+     * complete and must be thread-safe.
+     */
+    public void analyze(List<String> fens, Consumer<? super Result> sink, boolean inOrder) {
+        Result[] results = new Result[fens.size()];
+        Consumer<List<Result>> onLeafDone;
+        if (inOrder) {
+            OrderedEmitter emitter = new OrderedEmitter(results, sink);
+            onLeafDone = leaf -> emitter.drain();
+        } else {
+            onLeafDone = leaf -> leaf.forEach(sink);
+        }
+        pool.invoke(new Split(fens, 0, fens.size(), results, onLeafDone));
+    }
+
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    /** Analyze one position on the calling thread. */
+    public static Result analyze(int index, String fen) {
+        return analyze(index, fen, new Board());
+    }
+
+    private static Result analyze(int index, String fen, Board board) {
+        try {
+            Fen.parseInto(fen, board);
+        } catch (IllegalArgumentException e) {
+            return new Result(index, fen, false, false, false, 0, 0, e.getMessage());
+        }
+        Piece.Color toMove = board.getSideToMove();
+        if (new LegalityChecker(board, toMove.opponent()).inCheck()) {
+            return new Result(index, fen, false, false, false, 0, 0, "side not to move is in check");
+        }
+        Game game = new Game(board, 0, false);
+        boolean check = game.inCheck();
+        int moves = game.legalMoves(MOVES.get());
+        return new Result(index, fen, check, check && moves == 0, !check && moves == 0,
+                moves, materialBalance(board), null);
+    }
+
+    private static int materialBalance(Board board) {
+        int balance = 0;
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece p = board.getPiece(file, rank);
+                if (p == null) continue;
+                int value;
+                switch (p.getType()) {
+                    case "P": value = 1; break;
+                    case "N": case "B": value = 3; break;
+                    case "R": value = 5; break;
+                    case "Q": value = 9; break;
+                    default: value = 0;
+                }
+                balance += (p.getColor() == Piece.Color.WHITE) ? value : -value;
+            }
+        }
+        return balance;
+    }
+
+    // Halve the range until it is small enough to run on one scratch board
+    private static final class Split extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> fens;
+        private final int from;
+        private final int to;
+        private final Result[] results;
+        private final Consumer<List<Result>> onLeafDone;
+
+        Split(List<String> fens, int from, int to, Result[] results, Consumer<List<Result>> onLeafDone) {
+            this.fens = fens;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.onLeafDone = onLeafDone;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Split(fens, from, mid, results, onLeafDone),
+                        new Split(fens, mid, to, results, onLeafDone));
+                return;
+            }
+            Board board = SCRATCH.get();
+            for (int i = from; i < to; i++) {
+                results[i] = analyze(i, fens.get(i), board);
+            }
+            if (onLeafDone != null) {
+                onLeafDone.accept(Arrays.asList(results).subList(from, to));
+            }
+        }
+    }
+
+    // Emits the longest finished prefix of the batch each time a run completes
+    private static final class OrderedEmitter {
+        private final Result[] results;
+        private final Consumer<? super Result> sink;
+        private int next;
+
+        OrderedEmitter(Result[] results, Consumer<? super Result> sink) {
+            this.results = results;
+            this.sink = sink;
+        }
+
+        synchronized void drain() {
+            while (next < results.length && results[next] != null) {
+                sink.accept(results[next++]);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package chess;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import chess.Chess.Player;
@@ -7,12 +8,31 @@ import chess.Chess.Player;
 public class Board {
     private final Piece[][] squares = new Piece[8][8];
     private Player currentPlayer = Player.white;
-    private Map<String, Boolean> castlingRights = new HashMap<>();
-    private String enPassantTarget = null;
+    private byte castlingRights = ALL_CASTLING; // mask of the *_SIDE bits still available
+    private byte enPassantSquare = NO_SQUARE; // rank*8+file behind a pawn that just moved two squares
+
+    static final int WHITE_KING_SIDE = 1;
+    static final int WHITE_QUEEN_SIDE = 2;
+    static final int BLACK_KING_SIDE = 4;
+    static final int BLACK_QUEEN_SIDE = 8;
+    static final byte ALL_CASTLING = 15;
+    static final byte NO_SQUARE = -1;
+
+    // Rights that survive a move touching a square: king and rook home squares clear theirs
+    private static final int[] CASTLING_KEPT = new int[64];
+
+    static {
+        Arrays.fill(CASTLING_KEPT, ALL_CASTLING);
+        CASTLING_KEPT[4] = ALL_CASTLING & ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+        CASTLING_KEPT[7] = ALL_CASTLING & ~WHITE_KING_SIDE;
+        CASTLING_KEPT[0] = ALL_CASTLING & ~WHITE_QUEEN_SIDE;
+        CASTLING_KEPT[60] = ALL_CASTLING & ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+        CASTLING_KEPT[63] = ALL_CASTLING & ~BLACK_KING_SIDE;
+        CASTLING_KEPT[56] = ALL_CASTLING & ~BLACK_QUEEN_SIDE;
+    }
 
     public Board() {
         initializeBoard();
-        initializeCastlingRights();
     }
 
     // Copy constructor to clone board state
@@ -26,8 +46,8 @@ public class Board {
             }
         }
         this.currentPlayer = other.currentPlayer;
-        this.castlingRights = new HashMap<>(other.castlingRights);
-        this.enPassantTarget = other.enPassantTarget;
+        this.castlingRights = other.castlingRights;
+        this.enPassantSquare = other.enPassantSquare;
     }
 
     private void initializeBoard() {
@@ -58,13 +78,6 @@ public class Board {
     }
     
 
-    private void initializeCastlingRights() {
-        castlingRights.put("whiteKingSide", true);
-        castlingRights.put("whiteQueenSide", true);
-        castlingRights.put("blackKingSide", true);
-        castlingRights.put("blackQueenSide", true);
-    }
-
     /**
      * Attempt to move a piece from one position to another.
      * @param move A string like "e2 e4" (or including promotion e.g., "e7 e8 Q")
@@ -113,7 +126,8 @@ public class Board {
             if (promotion.isEmpty()) promotion = "Q"; // default to Queen
             squares[to[0]][to[1]] = createPromotionPiece(promotion, pawn.getColor());
             squares[from[0]][from[1]] = null;
-            enPassantTarget = null;  // no en passant possible after a promotion
+            updateCastlingRights(from, to);
+            enPassantSquare = NO_SQUARE;  // no en passant possible after a promotion
             switchPlayer();
             return true;
         }
@@ -137,15 +151,108 @@ public class Board {
 
         // If moved two squares, set en passant target; otherwise clear it
         if (Math.abs(to[1] - from[1]) == 2) {
-            enPassantTarget = toPosition(new int[]{ from[0], (from[1] + to[1]) / 2 });
+            enPassantSquare = (byte) (((from[1] + to[1]) / 2) * 8 + from[0]);
         } else {
-            enPassantTarget = null;
+            enPassantSquare = NO_SQUARE;
         }
 
         switchPlayer();
         return true;
     }
 
+    /**
+     * Execute a move the caller has already validated, including castling, en passant
+     * and promotion, without re-running the piece rules.
+     */
+    public void executeValidatedMove(int[] from, int[] to, String promotion) {
+        Piece piece = getPiece(from[0], from[1]);
+        if (piece instanceof King && Math.abs(to[0] - from[0]) == 2) {
+            // Castling: the rook jumps to the square the king passed over
+            int direction = (to[0] > from[0]) ? 1 : -1;
+            int rookFile = (direction == 1) ? 7 : 0;
+            executeMove(from, to);
+            executeMove(new int[]{ rookFile, from[1] }, new int[]{ from[0] + direction, from[1] });
+        } else if (piece instanceof Pawn && from[0] != to[0] && squares[to[0]][to[1]] == null) {
+            // En passant: the captured pawn sits beside the moving pawn
+            squares[to[0]][from[1]] = null;
+            executeMove(from, to);
+        } else if (piece instanceof Pawn && ((Pawn) piece).canPromote(to[1])) {
+            squares[to[0]][to[1]] = createPromotionPiece(promotion.isEmpty() ? "Q" : promotion, piece.getColor());
+            squares[from[0]][from[1]] = null;
+            updateCastlingRights(from, to);
+        } else {
+            executeMove(from, to);
+        }
+        // A double pawn step opens en passant for exactly one reply
+        if (piece instanceof Pawn && Math.abs(to[1] - from[1]) == 2) {
+            enPassantSquare = (byte) (((from[1] + to[1]) / 2) * 8 + from[0]);
+        } else {
+            enPassantSquare = NO_SQUARE;
+        }
+        switchPlayer();
+    }
+
+    /** What {@link #unmake} needs to take back a move played with {@link #make}. */
+    static final class Undo {
+        private Piece moved;
+        private Piece captured;
+        private int capturedSquare;
+        private byte castlingRights;
+        private byte enPassantSquare;
+    }
+
+    /**
+     * Play a legal move packed as in {@link GameRecord} in place, filling {@code undo}. Unlike
+     * executeValidatedMove it leaves the pieces' moved flags alone, so unmake restores everything.
+     */
+    void make(int move, Undo undo) {
+        int from = move & 0x3F, to = (move >>> 6) & 0x3F, code = (move >>> 12) & 0x7;
+        int fromFile = from & 7, fromRank = from >>> 3, toFile = to & 7, toRank = to >>> 3;
+        Piece piece = squares[fromFile][fromRank];
+        undo.moved = piece;
+        undo.castlingRights = castlingRights;
+        undo.enPassantSquare = enPassantSquare;
+        undo.capturedSquare = to;
+        undo.captured = squares[toFile][toRank];
+        if (piece instanceof King && Math.abs(toFile - fromFile) == 2) {
+            // Castling: the rook jumps to the square the king passed over
+            int rookFile = (toFile > fromFile) ? 7 : 0;
+            squares[(fromFile + toFile) / 2][fromRank] = squares[rookFile][fromRank];
+            squares[rookFile][fromRank] = null;
+        } else if (piece instanceof Pawn && fromFile != toFile && undo.captured == null) {
+            // En passant: the captured pawn sits beside the moving pawn
+            undo.capturedSquare = fromRank * 8 + toFile;
+            undo.captured = squares[toFile][fromRank];
+            squares[toFile][fromRank] = null;
+        }
+        squares[toFile][toRank] = (piece instanceof Pawn && ((Pawn) piece).canPromote(toRank))
+                ? createPromotionPiece(GameRecord.PROMOTIONS[code == 0 ? 1 : code], piece.getColor())
+                : piece;
+        squares[fromFile][fromRank] = null;
+        castlingRights &= (byte) (CASTLING_KEPT[from] & CASTLING_KEPT[to]);
+        enPassantSquare = (piece instanceof Pawn && Math.abs(toRank - fromRank) == 2)
+                ? (byte) (((fromRank + toRank) / 2) * 8 + fromFile)
+                : NO_SQUARE;
+        switchPlayer();
+    }
+
+    /** Take back the move last played with {@link #make}. */
+    void unmake(int move, Undo undo) {
+        int from = move & 0x3F, to = (move >>> 6) & 0x3F;
+        int fromFile = from & 7, fromRank = from >>> 3, toFile = to & 7, toRank = to >>> 3;
+        if (undo.moved instanceof King && Math.abs(toFile - fromFile) == 2) {
+            int rookFile = (toFile > fromFile) ? 7 : 0;
+            squares[rookFile][fromRank] = squares[(fromFile + toFile) / 2][fromRank];
+            squares[(fromFile + toFile) / 2][fromRank] = null;
+        }
+        squares[fromFile][fromRank] = undo.moved;
+        squares[toFile][toRank] = null;
+        squares[undo.capturedSquare & 7][undo.capturedSquare >>> 3] = undo.captured;
+        castlingRights = undo.castlingRights;
+        enPassantSquare = undo.enPassantSquare;
+        switchPlayer();
+    }
+
     /** Moves a piece on the board without validation (internal use). */
     private void executeMove(int[] from, int[] to) {
         Piece piece = squares[from[0]][from[1]];
@@ -154,25 +261,46 @@ public class Board {
         if (piece != null) {
             piece.markAsMoved();
         }
+        updateCastlingRights(from, to);
+    }
+
+    // Moving from or capturing on a king or rook home square gives up the matching rights
+    private void updateCastlingRights(int[] from, int[] to) {
+        castlingRights &= (byte) (CASTLING_KEPT[from[1] * 8 + from[0]] & CASTLING_KEPT[to[1] * 8 + to[0]]);
     }
 
     /**
      * Determine if a square is under attack by any piece of the given color.
      */
     public boolean isSquareUnderAttack(int file, int rank, Piece.Color attackerColor) {
+        // Attack geometry only: validating moves here would recurse through the enemy king
+        long target = 1L << (rank * 8 + file);
+        long occupied = occupancy();
         for (int f = 0; f < 8; f++) {
             for (int r = 0; r < 8; r++) {
                 Piece p = squares[f][r];
-                if (p != null && p.getColor() == attackerColor) {
-                    if (p.isValidMove(f, r, file, rank, this)) {
-                        return true;
-                    }
+                if (p != null && p.getColor() == attackerColor
+                        && (p.attacks(f, r, occupied) & target) != 0) {
+                    return true;
                 }
             }
         }
         return false;
     }
 
+    /** Occupied squares as a bit mask indexed rank * 8 + file. */
+    long occupancy() {
+        long occupied = 0L;
+        for (int f = 0; f < 8; f++) {
+            for (int r = 0; r < 8; r++) {
+                if (squares[f][r] != null) {
+                    occupied |= 1L << (r * 8 + f);
+                }
+            }
+        }
+        return occupied;
+    }
+
     public int[] parsePosition(String pos) {
         if (pos == null || pos.length() != 2) return null;
         int file = pos.charAt(0) - 'a';
@@ -205,14 +333,76 @@ public class Board {
         currentPlayer = (currentPlayer == Player.white) ? Player.black : Player.white;
     }
 
+    public Piece.Color getSideToMove() {
+        return currentPlayerColor();
+    }
+
+    /** The en passant target square (e.g. "e3"), or null. Compatibility view of {@link #getEnPassantSquare()}. */
     public String getEnPassantTarget() {
-        return enPassantTarget;
+        return enPassantSquare == NO_SQUARE ? null : toPosition(new int[]{ enPassantSquare & 7, enPassantSquare >>> 3 });
     }
 
-    public Map<String, Boolean> getCastlingRights() {
+    /** The en passant target as rank*8+file, or {@link #NO_SQUARE}. */
+    int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    /** Mask of the WHITE_KING_SIDE..BLACK_QUEEN_SIDE rights still available. */
+    int getCastlingMask() {
         return castlingRights;
     }
 
+    boolean hasCastlingRight(int right) {
+        return (castlingRights & right) != 0;
+    }
+
+    // Used when a position is rebuilt from a compact encoding rather than played out
+    void setSideToMove(Piece.Color color) {
+        currentPlayer = (color == Piece.Color.WHITE) ? Player.white : Player.black;
+    }
+
+    void setEnPassantSquare(int square) {
+        enPassantSquare = (byte) square;
+    }
+
+    /**
+     * Grant the given castling rights on a set-up board, minus any whose king or rook is not on
+     * its home square. Kings and rooks without a right are also marked as moved, so the
+     * piece-level castling rules agree with the mask.
+     */
+    void setCastlingMask(int mask) {
+        if (!isHome(4, 0, Piece.Color.WHITE, King.class)) mask &= ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+        if (!isHome(7, 0, Piece.Color.WHITE, Rook.class)) mask &= ~WHITE_KING_SIDE;
+        if (!isHome(0, 0, Piece.Color.WHITE, Rook.class)) mask &= ~WHITE_QUEEN_SIDE;
+        if (!isHome(4, 7, Piece.Color.BLACK, King.class)) mask &= ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+        if (!isHome(7, 7, Piece.Color.BLACK, Rook.class)) mask &= ~BLACK_KING_SIDE;
+        if (!isHome(0, 7, Piece.Color.BLACK, Rook.class)) mask &= ~BLACK_QUEEN_SIDE;
+        castlingRights = (byte) mask;
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece p = squares[file][rank];
+                if ((p instanceof King || p instanceof Rook) && (CASTLING_KEPT[rank * 8 + file] | ~mask) == -1) {
+                    p.markAsMoved();
+                }
+            }
+        }
+    }
+
+    private boolean isHome(int file, int rank, Piece.Color color, Class<? extends Piece> type) {
+        Piece p = squares[file][rank];
+        return type.isInstance(p) && p.getColor() == color;
+    }
+
+    /** Compatibility view of the castling mask, keyed "whiteKingSide", "whiteQueenSide", "blackKingSide", "blackQueenSide". */
+    public Map<String, Boolean> getCastlingRights() {
+        Map<String, Boolean> rights = new HashMap<>();
+        rights.put("whiteKingSide", hasCastlingRight(WHITE_KING_SIDE));
+        rights.put("whiteQueenSide", hasCastlingRight(WHITE_QUEEN_SIDE));
+        rights.put("blackKingSide", hasCastlingRight(BLACK_KING_SIDE));
+        rights.put("blackQueenSide", hasCastlingRight(BLACK_QUEEN_SIDE));
+        return rights;
+    }
+
     /**
      * Perform castling (king and rook moves) if legal. Assumes the move is a king moving two squares.
      */
@@ -300,7 +490,7 @@ public class Board {
             setPiece(to[0], to[1], pawn);
             setPiece(from[0], from[1], null);
             pawn.markAsMoved();
-            enPassantTarget = null;
+            enPassantSquare = NO_SQUARE;
             switchPlayer();
         }
     }
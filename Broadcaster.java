@@ -0,0 +1,303 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fans game updates out to spectators over non-blocking NIO channels.
+ *
+ * After each accepted move the update is encoded once into an immutable frame, and every
+ * subscriber of that game is handed a view of the same bytes; nothing is serialized per
+ * subscriber. A single selector thread does all the writing. A subscriber that cannot keep up
+ * finishes the frame it is writing and then skips straight to the latest one, so it holds at
+ * most one frame in flight and one pending however far behind it falls.
+ *
+ * Frame layout (big-endian): int length of the rest, byte {@value #FRAME_UPDATE}, short ply count,
+ * byte {@link ReturnPlay.Message} ordinal + 1 (0 for none), byte game id length and its UTF-8
+ * bytes, byte SAN length and its ASCII bytes (0 for a resignation), then the
+ * {@link PackedPosition} of the board.
+ */
+public class Broadcaster implements Closeable {
+    public static final byte FRAME_UPDATE = 1;
+
+    private final ConcurrentHashMap<String, Audience> audiences = new ConcurrentHashMap<>();
+    private final Queue<Subscription> dirty = new ConcurrentLinkedQueue<>();
+    private final Selector selector;
+    private final Thread writer;
+    private volatile boolean closed = false;
+    private final LongAdder framesEncoded = new LongAdder();
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder framesCoalesced = new LongAdder();
+
+    public Broadcaster() throws IOException {
+        this.selector = Selector.open();
+        this.writer = new Thread(this::writeLoop, "chess-broadcaster");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Subscribers of one game and the frame a new subscriber starts from. Joining and publishing
+    // hold its lock, so a new subscriber cannot be handed a frame older than one already offered.
+    private static final class Audience {
+        final CopyOnWriteArrayList<Subscription> subscribers = new CopyOnWriteArrayList<>();
+        ByteBuffer latest; // guarded by this
+        boolean ended;     // guarded by this; set once endGame has removed the audience
+    }
+
+    /** One spectator's connection; closing it unsubscribes and closes the channel. */
+    public final class Subscription implements Closeable {
+        private final String gameId;
+        private final SelectableChannel channel;
+        private final AtomicReference<ByteBuffer> pending = new AtomicReference<>();
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private volatile boolean cancelled = false;
+        private ByteBuffer inFlight; // writer thread only
+        private SelectionKey key;    // writer thread only
+
+        Subscription(String gameId, SelectableChannel channel) {
+            this.gameId = gameId;
+            this.channel = channel;
+        }
+
+        public String getGameId() {
+            return gameId;
+        }
+
+        public boolean isOpen() {
+            return !cancelled;
+        }
+
+        @Override
+        public void close() {
+            cancelled = true;
+            Audience audience = audiences.get(gameId);
+            if (audience != null) {
+                audience.subscribers.remove(this);
+            }
+            schedule(); // the writer thread cancels the key and closes the channel
+        }
+
+        // Replace whatever is waiting with the newer frame
+        void offer(ByteBuffer frame) {
+            if (pending.getAndSet(frame) != null) {
+                framesCoalesced.increment();
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (queued.compareAndSet(false, true)) {
+                dirty.add(this);
+                selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Stream updates of a game to the channel, starting with the latest one if any. The channel
+     * is switched to non-blocking mode and belongs to the broadcaster until the subscription closes.
+     * A subscription that races with {@link #endGame} comes back already closed.
+     */
+    public <C extends SelectableChannel & WritableByteChannel> Subscription subscribe(String gameId, C channel)
+            throws IOException {
+        if (closed) {
+            throw new IOException("Broadcaster is closed");
+        }
+        channel.configureBlocking(false);
+        Subscription subscription = new Subscription(gameId, channel);
+        Audience audience = audiences.computeIfAbsent(gameId, id -> new Audience());
+        synchronized (audience) {
+            if (!audience.ended) {
+                audience.subscribers.add(subscription);
+                if (audience.latest != null) {
+                    subscription.offer(audience.latest);
+                }
+                return subscription;
+            }
+        }
+        subscription.close();
+        return subscription;
+    }
+
+    /** Play a move and broadcast the update if it was accepted. */
+    public ReturnPlay play(String gameId, Game game, String move) {
+        ReturnPlay result = game.play(move);
+        if (result.message != ReturnPlay.Message.ILLEGAL_MOVE) {
+            publish(gameId, game, result);
+        }
+        return result;
+    }
+
+    /**
+     * Broadcast the game's current state after an accepted move (or resignation). An update of a
+     * finished game whose audience {@link #endGame} already removed is dropped.
+     */
+    public void publish(String gameId, Game game, ReturnPlay result) {
+        // Only a game still in play may start an audience; endGame must not be undone
+        Audience audience = game.isOver()
+                ? audiences.get(gameId)
+                : audiences.computeIfAbsent(gameId, id -> new Audience());
+        if (audience == null) return;
+        ByteBuffer frame = encode(gameId, game, result);
+        framesEncoded.increment();
+        synchronized (audience) {
+            if (audience.ended) return;
+            audience.latest = frame;
+            for (Subscription s : audience.subscribers) {
+                s.offer(frame);
+            }
+        }
+    }
+
+    /** Forget a finished game and close its subscriptions. */
+    public void endGame(String gameId) {
+        Audience audience = audiences.remove(gameId);
+        if (audience == null) return;
+        synchronized (audience) {
+            audience.ended = true;
+        }
+        for (Subscription s : audience.subscribers) {
+            s.close();
+        }
+    }
+
+    public int getSubscriberCount(String gameId) {
+        Audience audience = audiences.get(gameId);
+        return audience == null ? 0 : audience.subscribers.size();
+    }
+
+    /** Frames built by {@link #publish}, one per update however many subscribers it has. */
+    public long getFramesEncoded() {
+        return framesEncoded.sum();
+    }
+
+    /** Frames fully written to a subscriber. */
+    public long getFramesSent() {
+        return framesSent.sum();
+    }
+
+    /** Frames a slow subscriber skipped because a newer one replaced them before they were sent. */
+    public long getFramesCoalesced() {
+        return framesCoalesced.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (String gameId : audiences.keySet()) {
+            endGame(gameId);
+        }
+        selector.wakeup();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        selector.close();
+    }
+
+    // Read-only, so every subscriber's duplicate() shares the bytes but cannot change them
+    static ByteBuffer encode(String gameId, Game game, ReturnPlay result) {
+        byte[] id = gameId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > 255) {
+            throw new IllegalArgumentException("Game id longer than 255 bytes: " + gameId);
+        }
+        String san = result.message == ReturnPlay.Message.RESIGN_BLACK_WINS
+                || result.message == ReturnPlay.Message.RESIGN_WHITE_WINS ? null : game.getLastMoveSan();
+        int sanLength = san == null ? 0 : san.length();
+        int body = 1 + 2 + 1 + 1 + id.length + 1 + sanLength + PackedPosition.BYTES;
+        ByteBuffer frame = ByteBuffer.allocateDirect(4 + body);
+        frame.putInt(body);
+        frame.put(FRAME_UPDATE);
+        frame.putShort((short) game.getPlyCount());
+        frame.put((byte) (result.message == null ? 0 : result.message.ordinal() + 1));
+        frame.put((byte) id.length).put(id);
+        frame.put((byte) sanLength);
+        for (int i = 0; i < sanLength; i++) {
+            frame.put((byte) san.charAt(i));
+        }
+        PackedPosition.pack(game.getBoard(), frame);
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    private void writeLoop() {
+        try {
+            while (!closed || !dirty.isEmpty()) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isValid()) {
+                        key.interestOps(0);
+                        flush((Subscription) key.attachment());
+                    }
+                }
+                selector.selectedKeys().clear();
+                Subscription s;
+                while ((s = dirty.poll()) != null) {
+                    s.queued.set(false);
+                    flush(s);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // Selector failure: nothing more can be written
+        }
+    }
+
+    // Write as much as the channel takes; wait for OP_WRITE when it is full
+    private void flush(Subscription s) {
+        try {
+            if (s.cancelled) {
+                drop(s);
+                return;
+            }
+            while (true) {
+                if (s.inFlight == null) {
+                    ByteBuffer next = s.pending.getAndSet(null);
+                    if (next == null) return;
+                    s.inFlight = next.duplicate();
+                }
+                ((WritableByteChannel) s.channel).write(s.inFlight);
+                if (s.inFlight.hasRemaining()) {
+                    if (s.key == null) {
+                        s.key = s.channel.register(selector, SelectionKey.OP_WRITE, s);
+                    } else {
+                        s.key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                    return;
+                }
+                s.inFlight = null;
+                framesSent.increment();
+            }
+        } catch (IOException e) {
+            s.close(); // the spectator went away
+            drop(s);
+        }
+    }
+
+    private void drop(Subscription s) {
+        if (s.key != null) {
+            s.key.cancel();
+        }
+        s.inFlight = null;
+        s.pending.set(null);
+        try {
+            s.channel.close();
+        } catch (IOException e) {
+            // already unusable
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package chess;
+
+/**
+ * Forsyth-Edwards Notation for positions. The board does not track the half-move clock
+ * or move number, so both are accepted but ignored when parsing and written as "0 1".
+ */
+public final class Fen {
+    public static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static final String PIECES = "PNBRQK";
+
+    private Fen() { }
+
+    /** A new board holding the position; throws IllegalArgumentException if the FEN is malformed. */
+    public static Board parse(String fen) {
+        Board board = new Board();
+        parseInto(fen, board);
+        return board;
+    }
+
+    /** Replace the contents of an existing board, e.g. a per-thread scratch board. */
+    static void parseInto(String fen, Board board) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 2) {
+            throw new IllegalArgumentException("FEN needs at least placement and side to move: " + fen);
+        }
+        String[] ranks = fields[0].split("/");
+        if (ranks.length != 8) {
+            throw new IllegalArgumentException("FEN placement must have 8 ranks: " + fen);
+        }
+        int whiteKings = 0;
+        int blackKings = 0;
+        for (int i = 0; i < 8; i++) {
+            int rank = 7 - i;
+            int file = 0;
+            for (char c : ranks[i].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    if (file + (c - '0') > 8) {
+                        throw new IllegalArgumentException("Bad FEN rank '" + ranks[i] + "': " + fen);
+                    }
+                    for (int n = c - '0'; n > 0; n--) {
+                        board.setPiece(file++, rank, null);
+                    }
+                    continue;
+                }
+                int type = PIECES.indexOf(Character.toUpperCase(c));
+                if (type < 0 || file > 7) {
+                    throw new IllegalArgumentException("Bad FEN rank '" + ranks[i] + "': " + fen);
+                }
+                boolean white = Character.isUpperCase(c);
+                if (c == 'K') whiteKings++;
+                if (c == 'k') blackKings++;
+                board.setPiece(file++, rank, PackedPosition.piece((type + 1) | (white ? 0 : 8)));
+            }
+            if (file != 8) {
+                throw new IllegalArgumentException("Bad FEN rank '" + ranks[i] + "': " + fen);
+            }
+        }
+        if (whiteKings != 1 || blackKings != 1) {
+            throw new IllegalArgumentException("FEN must have one king per side: " + fen);
+        }
+
+        if (!fields[1].equals("w") && !fields[1].equals("b")) {
+            throw new IllegalArgumentException("Bad FEN side to move '" + fields[1] + "': " + fen);
+        }
+        board.setSideToMove(fields[1].equals("w") ? Piece.Color.WHITE : Piece.Color.BLACK);
+
+        int rights = 0;
+        String castling = fields.length > 2 ? fields[2] : "-";
+        if (!castling.equals("-")) {
+            for (char c : castling.toCharArray()) {
+                switch (c) {
+                    case 'K': rights |= Board.WHITE_KING_SIDE; break;
+                    case 'Q': rights |= Board.WHITE_QUEEN_SIDE; break;
+                    case 'k': rights |= Board.BLACK_KING_SIDE; break;
+                    case 'q': rights |= Board.BLACK_QUEEN_SIDE; break;
+                    default:
+                        throw new IllegalArgumentException("Bad FEN castling '" + castling + "': " + fen);
+                }
+            }
+        }
+        board.setCastlingMask(rights);
+
+        String ep = fields.length > 3 ? fields[3] : "-";
+        if (!ep.equals("-") && (GameRecord.parseSquare(ep) < 0 || (ep.charAt(1) != '3' && ep.charAt(1) != '6'))) {
+            throw new IllegalArgumentException("Bad FEN en passant square '" + ep + "': " + fen);
+        }
+        board.setEnPassantSquare(ep.equals("-") ? Board.NO_SQUARE : GameRecord.parseSquare(ep));
+    }
+
+    public static String toFen(Board board) {
+        StringBuilder sb = new StringBuilder(90);
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                Piece p = board.getPiece(file, rank);
+                if (p == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    sb.append(empty);
+                    empty = 0;
+                }
+                char c = p.getType().charAt(0);
+                sb.append(p.getColor() == Piece.Color.WHITE ? c : Character.toLowerCase(c));
+            }
+            if (empty > 0) sb.append(empty);
+            if (rank > 0) sb.append('/');
+        }
+        sb.append(board.getSideToMove() == Piece.Color.WHITE ? " w " : " b ");
+        int rights = board.getCastlingMask();
+        if (rights == 0) sb.append('-');
+        if ((rights & Board.WHITE_KING_SIDE) != 0) sb.append('K');
+        if ((rights & Board.WHITE_QUEEN_SIDE) != 0) sb.append('Q');
+        if ((rights & Board.BLACK_KING_SIDE) != 0) sb.append('k');
+        if ((rights & Board.BLACK_QUEEN_SIDE) != 0) sb.append('q');
+        String ep = board.getEnPassantTarget();
+        sb.append(' ').append(ep == null ? "-" : ep).append(" 0 1");
+        return sb.toString();
+    }
+}
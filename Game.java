@@ -0,0 +1,476 @@
+package chess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import chess.Chess.Player;
+
+/**
+ * One game of chess: the board, whose turn it is and whether the game is over.
+ * {@link Chess} drives a single default instance; services that run many games
+ * at once create their own. An instance is not thread-safe, but different
+ * instances share nothing mutable and can be played on different threads.
+ */
+public class Game {
+    static final int MAX_MOVES = 256; // no position has more than 218 legal moves
+
+    private final Board board;
+    private Player currentPlayer;
+    private boolean gameOver;
+    private int lastMove = Notation.NONE; // packed as in GameRecord
+    private String lastMoveSan = null;
+    private int plies;
+    private List<String> legalMovesCache = null; // legal moves of the current position, null until requested
+    private LegalityChecker positionChecker = null; // pins and checks of the current position, null until requested
+    private final OpeningBook openingBook; // optional book of known opening moves
+    private final Tablebase tablebase; // optional endgame tables for adjudication
+    private boolean inBook; // every move so far came from the book
+    private GameStore store = null; // optional write-ahead log for this game
+    private String id = null;
+
+    public Game() {
+        this(null, null);
+    }
+
+    /** A new game that consults the given opening book and tablebase; either may be null. */
+    public Game(OpeningBook openingBook, Tablebase tablebase) {
+        this.board = new Board();
+        this.currentPlayer = Player.white;
+        this.gameOver = false;
+        this.openingBook = openingBook;
+        this.tablebase = tablebase;
+        this.inBook = openingBook != null;
+    }
+
+    // Resume a game from a position, e.g. one rebuilt by GameStore recovery
+    Game(Board board, int plies, boolean gameOver) {
+        this(board, plies, gameOver, null, null, false);
+    }
+
+    // Resume a game that keeps consulting its book and tablebase, e.g. one rehydrated by TieredGameStore
+    Game(Board board, int plies, boolean gameOver, OpeningBook openingBook, Tablebase tablebase, boolean inBook) {
+        this.board = board;
+        this.currentPlayer = (board.getSideToMove() == Piece.Color.WHITE) ? Player.white : Player.black;
+        this.gameOver = gameOver;
+        this.plies = plies;
+        this.openingBook = openingBook;
+        this.tablebase = tablebase;
+        this.inBook = inBook && openingBook != null;
+    }
+
+    /** A game that continues from the given FEN position. */
+    public static Game fromFen(String fen) {
+        return new Game(Fen.parse(fen), 0, false);
+    }
+
+    public ReturnPlay play(String move) {
+        long startNanos = Metrics.start();
+        ReturnPlay result = playMove(move);
+        Metrics.recordPlay(move, startNanos);
+        return result;
+    }
+
+    private ReturnPlay playMove(String move) {
+        ReturnPlay result = new ReturnPlay();
+        if (gameOver) {
+            // The game is over. Any further commands will be considered illegal movement.
+            result.message = ReturnPlay.Message.ILLEGAL_MOVE;
+            result.piecesOnBoard = getCurrentBoardState();
+            return result;
+        }
+
+        long parseStart = Metrics.start();
+        // Work on index bounds instead of trimmed and split copies of the input
+        int start = 0;
+        int end = move.length();
+        while (start < end && Character.isWhitespace(move.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(move.charAt(end - 1))) end--;
+        if (end - start == 6 && move.regionMatches(true, start, "resign", 0, 6)) {
+            // Current Player Concedes
+            result.message = (currentPlayer == Player.white)
+                    ? ReturnPlay.Message.RESIGN_BLACK_WINS
+                    : ReturnPlay.Message.RESIGN_WHITE_WINS;
+            gameOver = true;
+            if (store != null) {
+                store.logEnd(id, plies, result.message);
+            }
+            // stay the same
+            result.piecesOnBoard = getCurrentBoardState();
+            return result;
+        }
+
+        // check draw（draw?）
+        boolean drawOffered = false;
+        if (end - start >= 5 && move.startsWith("draw?", end - 5)) {
+            drawOffered = true;
+            // Drop the “draw?” part at the end and keep only the move commands.
+            end -= 5;
+        }
+
+        // Coordinate ("e2 e4", "e7 e8 Q"), UCI ("e2e4") or SAN ("Nf3") move
+        int packed = Notation.parse(move, start, end, this);
+        Metrics.record(Metrics.Phase.PARSE, parseStart);
+        if (packed == Notation.NONE) {
+            result.message = ReturnPlay.Message.ILLEGAL_MOVE;
+            result.piecesOnBoard = getCurrentBoardState();
+            return result;
+        }
+        int from = Notation.from(packed);
+        int to = Notation.to(packed);
+        int fromFile = from & 7, fromRank = from >>> 3, toFile = to & 7, toRank = to >>> 3;
+
+        // While in book, a known move is legal and its outcome is stored with it
+        int bookFlags = -1;
+        if (inBook) {
+            bookFlags = openingBook.flags(Zobrist.hash(board), (short) packed);
+            inBook = bookFlags >= 0;
+        }
+
+        // Validate against the pins and checks of the current position (castling and en passant included)
+        if (bookFlags < 0) {
+            long legalityStart = Metrics.start();
+            boolean legal = isLegalMove(fromFile, fromRank, toFile, toRank);
+            Metrics.record(Metrics.Phase.LEGALITY, legalityStart);
+            if (!legal) {
+                result.message = ReturnPlay.Message.ILLEGAL_MOVE;
+                result.piecesOnBoard = getCurrentBoardState();
+                return result;
+            }
+        }
+
+        String san = Notation.sanBody(this, packed);
+        GameRecord.apply(board, (short) packed);
+        lastMove = packed;
+        plies++;
+        // switch player
+        currentPlayer = (currentPlayer == Player.white) ? Player.black : Player.white;
+        clearPositionCache();
+        result.piecesOnBoard = getCurrentBoardState();
+
+        // checkmate/draw
+        if (bookFlags >= 0) {
+            if ((bookFlags & OpeningBook.FLAG_CHECKMATE) != 0) {
+                result.message = (currentPlayer == Player.white)
+                        ? ReturnPlay.Message.CHECKMATE_BLACK_WINS
+                        : ReturnPlay.Message.CHECKMATE_WHITE_WINS;
+                gameOver = true;
+            } else if ((bookFlags & OpeningBook.FLAG_CHECK) != 0) {
+                result.message = ReturnPlay.Message.CHECK;
+            } else if ((bookFlags & OpeningBook.FLAG_STALEMATE) != 0) {
+                result.message = ReturnPlay.Message.STALEMATE;
+                gameOver = true;
+            }
+        } else if (isCheckmate()) {
+            result.message = (currentPlayer == Player.white)
+                    ? ReturnPlay.Message.CHECKMATE_BLACK_WINS
+                    : ReturnPlay.Message.CHECKMATE_WHITE_WINS;
+            gameOver = true;
+        } else if (isCheck()) {
+            result.message = ReturnPlay.Message.CHECK;
+        } else if (isStalemate()) {
+            result.message = ReturnPlay.Message.STALEMATE;
+            gameOver = true;
+        }
+
+        // If the move proposes a draw and the game does not end with a checkmate/draw, it ends with a draw.
+        if (!gameOver && drawOffered) {
+            result.message = ReturnPlay.Message.DRAW;
+            gameOver = true;
+        }
+        if (result.message == ReturnPlay.Message.CHECK) {
+            san += "+";
+        } else if (result.message == ReturnPlay.Message.CHECKMATE_WHITE_WINS
+                || result.message == ReturnPlay.Message.CHECKMATE_BLACK_WINS) {
+            san += "#";
+        }
+        lastMoveSan = san;
+
+        if (store != null) {
+            store.logMove(id, plies - 1, (short) packed, gameOver ? result.message : null);
+        }
+        return result;
+    }
+
+    public boolean isOver() {
+        return gameOver;
+    }
+
+    /** Number of moves (plies) played so far. */
+    public int getPlyCount() {
+        return plies;
+    }
+
+    /** Book moves for the current position, most played first; empty once out of book. */
+    public List<OpeningBook.Continuation> bookMoves() {
+        if (!inBook || gameOver) {
+            return Collections.emptyList();
+        }
+        return openingBook.continuations(board);
+    }
+
+    /**
+     * Tablebase verdict (win/draw/loss and distance to mate) for the side to move,
+     * or null when no tablebase is set or none of its tables covers the position.
+     */
+    public Tablebase.Result probeEndgame() throws IOException {
+        if (tablebase == null) {
+            return null;
+        }
+        return tablebase.probe(board, currentPlayerColor());
+    }
+
+    /**
+     * All legal moves for the side to move, in the same text form {@link #play} accepts
+     * ("e2 e4", "e7 e8 Q" for promotions, "e1 g1" for castling).
+     * Computed once per position and cached until the next move.
+     */
+    public List<String> legalMoves() {
+        if (gameOver) {
+            return Collections.emptyList();
+        }
+        if (legalMovesCache == null) {
+            legalMovesCache = Collections.unmodifiableList(generateLegalMoves());
+        }
+        return legalMovesCache;
+    }
+
+    /** Legal moves of the piece standing on the given square (e.g. "e2"). */
+    public List<String> legalMovesFrom(String square) {
+        List<String> moves = new ArrayList<>();
+        if (parsePosition(square) == null) {
+            return moves;
+        }
+        String prefix = square + " ";
+        for (String move : legalMoves()) {
+            if (move.startsWith(prefix)) {
+                moves.add(move);
+            }
+        }
+        return moves;
+    }
+
+    /** SAN of the last move played (e.g. "Nf3", "exd5", "O-O", "e8=Q#"), or null before the first. */
+    public String getLastMoveSan() {
+        return lastMoveSan;
+    }
+
+    /** UCI text of the last move played (e.g. "g1f3", "e7e8q"), or null before the first. */
+    public String getLastMoveUci() {
+        return lastMove == Notation.NONE ? null : Notation.toUci(lastMove);
+    }
+
+    // Last move packed as in GameRecord, or Notation.NONE
+    int lastMove() {
+        return lastMove;
+    }
+
+    // Put back the last move of a resumed game, so getLastMoveSan and getLastMoveUci report it
+    void restoreLastMove(int move, String san) {
+        this.lastMove = move;
+        this.lastMoveSan = san;
+    }
+
+    OpeningBook openingBook() {
+        return openingBook;
+    }
+
+    Tablebase tablebase() {
+        return tablebase;
+    }
+
+    boolean inBook() {
+        return inBook;
+    }
+
+    Board getBoard() {
+        return board;
+    }
+
+    // Whether the side to move is in check, without the metrics of the play path
+    boolean inCheck() {
+        return checker().inCheck();
+    }
+
+    // Forget what was derived from the board after Search made or unmade a move on it in place
+    void boardChanged() {
+        currentPlayer = (board.getSideToMove() == Piece.Color.WHITE) ? Player.white : Player.black;
+        clearPositionCache();
+    }
+
+    // Log every later move of this game to the store under the given id
+    void attach(GameStore store, String id) {
+        this.store = store;
+        this.id = id;
+    }
+
+    GameStore attachedStore() {
+        return store;
+    }
+
+    String attachedId() {
+        return id;
+    }
+
+    private boolean isCastling(int fromFile, int fromRank, int toFile, int toRank) {
+        // Determine if it is a king two-frame horizontal move
+        return board.getPiece(fromFile, fromRank) instanceof King
+                && Math.abs(fromFile - toFile) == 2
+                && fromRank == toRank;
+    }
+
+    private boolean isEnPassant(int fromFile, int fromRank, int toFile, int toRank) {
+        Piece movingPiece = board.getPiece(fromFile, fromRank);
+        if (!(movingPiece instanceof Pawn)) return false;
+        // The target frame must be empty and coincide with a position where a passerby pawn can be eaten
+        if (board.getPiece(toFile, toRank) != null) return false;
+        return board.getEnPassantSquare() == toRank * 8 + toFile;
+    }
+
+    private ArrayList<ReturnPiece> getCurrentBoardState() {
+        long startNanos = Metrics.start();
+        ArrayList<ReturnPiece> pieces = new ArrayList<>();
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece piece = board.getPiece(file, rank);
+                if (piece != null) {
+                    ReturnPiece rp = new ReturnPiece();
+                    rp.pieceFile = ReturnPiece.PieceFile.values()[file];
+                    // Converts internal row numbers to checkerboard row numbers (1-8), with 0 representing 1 row and 7 representing 8 rows.
+                    rp.pieceRank = rank + 1;
+                    rp.pieceType = ReturnPiece.PieceType.valueOf(
+                            (piece.getColor() == Piece.Color.WHITE ? "W" : "B") + piece.getType());
+                    pieces.add(rp);
+                }
+            }
+        }
+        Metrics.record(Metrics.Phase.BOARD_STATE, startNanos);
+        return pieces;
+    }
+
+    private static int[] parsePosition(String pos) {
+        if (pos == null || pos.length() != 2) return null;
+        int file = pos.charAt(0) - 'a';
+        int rank = Character.getNumericValue(pos.charAt(1)) - 1;
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) return null;
+        return new int[]{ file, rank };
+    }
+
+    private boolean isCheck() {
+        long startNanos = Metrics.start();
+        boolean check = isKingAttacked();
+        Metrics.record(Metrics.Phase.CHECK, startNanos);
+        return check;
+    }
+
+    private boolean isKingAttacked() {
+        // Check if the current player's king is generalized by the opponent
+        return checker().inCheck();
+    }
+
+    private boolean isCheckmate() {
+        long startNanos = Metrics.start();
+        boolean checkmate = hasNoEscape();
+        Metrics.record(Metrics.Phase.CHECKMATE, startNanos);
+        return checkmate;
+    }
+
+    private boolean hasNoEscape() {
+        // In check with no legal move left
+        return isKingAttacked() && legalMoves().isEmpty();
+    }
+
+    private boolean isStalemate() {
+        long startNanos = Metrics.start();
+        boolean stalemate = hasNoMoveWithoutCheck();
+        Metrics.record(Metrics.Phase.STALEMATE, startNanos);
+        return stalemate;
+    }
+
+    private boolean hasNoMoveWithoutCheck() {
+        // Draw (stalemate): The current player has no legal moves and is not in a checkmate state.
+        return !isKingAttacked() && legalMoves().isEmpty();
+    }
+
+    // Legal moves for the side to move, packed as in GameRecord with one entry per promotion
+    // piece, written to out (MAX_MOVES long); returns how many
+    int legalMoves(int[] out) {
+        if (gameOver) return 0;
+        int count = 0;
+        Piece.Color currentColor = currentPlayerColor();
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece piece = board.getPiece(file, rank);
+                if (piece == null || piece.getColor() != currentColor) continue;
+                for (int tFile = 0; tFile < 8; tFile++) {
+                    for (int tRank = 0; tRank < 8; tRank++) {
+                        if (!isLegalMove(file, rank, tFile, tRank)) continue;
+                        int move = Notation.pack(rank * 8 + file, tRank * 8 + tFile, 0);
+                        if (piece instanceof Pawn && ((Pawn) piece).canPromote(tRank)) {
+                            for (int code = 1; code < GameRecord.PROMOTIONS.length; code++) {
+                                out[count++] = move | (code << 12);
+                            }
+                        } else {
+                            out[count++] = move;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private List<String> generateLegalMoves() {
+        int[] packed = new int[MAX_MOVES];
+        int count = legalMoves(packed);
+        List<String> moves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            moves.add(Notation.toCoordinate(packed[i]));
+        }
+        return moves;
+    }
+
+    // Legality check for Notation, which resolves SAN against the current position
+    boolean isLegal(int fromFile, int fromRank, int toFile, int toRank) {
+        return !gameOver && isLegalMove(fromFile, fromRank, toFile, toRank);
+    }
+
+    // Full legality of a move for the side to move, without touching the board
+    private boolean isLegalMove(int fromFile, int fromRank, int toFile, int toRank) {
+        Piece piece = board.getPiece(fromFile, fromRank);
+        if (piece == null || piece.getColor() != currentPlayerColor()) return false;
+        LegalityChecker checker = checker();
+        if (isCastling(fromFile, fromRank, toFile, toRank)) {
+            return checker.isLegalCastling(fromFile, fromRank, toFile);
+        }
+        Piece target = board.getPiece(toFile, toRank);
+        if (target != null && target.getColor() == piece.getColor()) return false;
+        // King.isValidMove repeats an attack scan of the target; the checker's attack map
+        // (computed with the king removed) already answers that
+        boolean pseudoLegal = (piece instanceof King)
+                ? Math.abs(toFile - fromFile) <= 1 && Math.abs(toRank - fromRank) <= 1
+                : piece.isValidMove(fromFile, fromRank, toFile, toRank, board);
+        if (!pseudoLegal) return false;
+        if (isEnPassant(fromFile, fromRank, toFile, toRank)) {
+            return checker.isLegalEnPassant(fromFile, fromRank, toFile, toRank);
+        }
+        return checker.isLegal(fromFile, fromRank, toFile, toRank);
+    }
+
+    private LegalityChecker checker() {
+        if (positionChecker == null) {
+            positionChecker = new LegalityChecker(board, currentPlayerColor());
+        }
+        return positionChecker;
+    }
+
+    private void clearPositionCache() {
+        legalMovesCache = null;
+        positionChecker = null;
+    }
+
+    private Piece.Color currentPlayerColor() {
+        return (currentPlayer == Player.white) ? Piece.Color.WHITE : Piece.Color.BLACK;
+    }
+}
@@ -0,0 +1,71 @@
+package chess;
+
+/**
+ * Compact binary game record format shared by {@link GameRecordWriter} and {@link GameRecordReader}.
+ *
+ * An archive starts with the 4-byte magic "CHGR" and a version byte, followed by games:
+ * an unsigned 16-bit ply count, one result byte ({@link ReturnPlay.Message} ordinal, or
+ * {@link #UNFINISHED}), then one big-endian 16-bit packed move per ply.
+ * A packed move holds the from square in bits 0-5, the to square in bits 6-11 and the
+ * promotion piece in bits 12-14, with squares indexed as rank * 8 + file.
+ */
+public final class GameRecord {
+    static final byte[] MAGIC = { 'C', 'H', 'G', 'R' };
+    static final byte VERSION = 1;
+    static final int FILE_HEADER_BYTES = MAGIC.length + 1;
+    static final int GAME_HEADER_BYTES = 3;
+    static final int MAX_PLIES = 0xFFFF;
+    static final int UNFINISHED = 0xFF;
+
+    // Promotion codes 1..4; 0 means no promotion
+    static final String[] PROMOTIONS = { "", "Q", "R", "B", "N" };
+
+    // Shared, never modified: lets replay hand squares to Board without allocating
+    private static final int[][] SQUARES = new int[64][];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            SQUARES[sq] = new int[]{ sq & 7, sq >>> 3 };
+        }
+    }
+
+    private GameRecord() { }
+
+    static short pack(int from, int to, String promotion) {
+        int code = 0;
+        for (int i = 1; i < PROMOTIONS.length; i++) {
+            if (PROMOTIONS[i].equalsIgnoreCase(promotion)) {
+                code = i;
+            }
+        }
+        return (short) (from | (to << 6) | (code << 12));
+    }
+
+    public static int fromSquare(short move) {
+        return move & 0x3F;
+    }
+
+    public static int toSquare(short move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    /** Promotion piece letter ("Q", "R", "B", "N"), or "" for a normal move. */
+    public static String promotion(short move) {
+        int code = (move >>> 12) & 0x7;
+        return code < PROMOTIONS.length ? PROMOTIONS[code] : "";
+    }
+
+    /** Apply a packed move to the board; the move must be legal in the board's position. */
+    public static void apply(Board board, short move) {
+        board.executeValidatedMove(SQUARES[fromSquare(move)], SQUARES[toSquare(move)], promotion(move));
+    }
+
+    /** Square index of a coordinate like "e2", or -1 if it is not one. */
+    static int parseSquare(String pos) {
+        if (pos == null || pos.length() != 2) return -1;
+        int file = pos.charAt(0) - 'a';
+        int rank = pos.charAt(1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) return -1;
+        return rank * 8 + file;
+    }
+}
@@ -0,0 +1,127 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Memory-maps a {@link GameRecord} archive and iterates its games without copying.
+ * Archives larger than one mapping window are walked window by window.
+ */
+public class GameRecordReader implements Closeable, Iterable<GameRecordReader.RecordedGame> {
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final long size;
+
+    public GameRecordReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        boolean valid = size >= GameRecord.FILE_HEADER_BYTES;
+        if (valid) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, GameRecord.FILE_HEADER_BYTES);
+            for (byte b : GameRecord.MAGIC) {
+                valid &= header.get() == b;
+            }
+            valid &= header.get() == GameRecord.VERSION;
+        }
+        if (!valid) {
+            channel.close();
+            throw new IOException("Not a version " + GameRecord.VERSION + " game record archive: " + file);
+        }
+    }
+
+    @Override
+    public Iterator<RecordedGame> iterator() {
+        return new Iterator<RecordedGame>() {
+            private long position = GameRecord.FILE_HEADER_BYTES;
+            private MappedByteBuffer window;
+            private long windowStart;
+
+            @Override
+            public boolean hasNext() {
+                return position + GameRecord.GAME_HEADER_BYTES <= size;
+            }
+
+            @Override
+            public RecordedGame next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ensureMapped(GameRecord.GAME_HEADER_BYTES);
+                int offset = (int) (position - windowStart);
+                int plies = window.getShort(offset) & 0xFFFF;
+                int length = GameRecord.GAME_HEADER_BYTES + plies * 2;
+                ensureMapped(length);
+                offset = (int) (position - windowStart);
+                ByteBuffer slice = window.duplicate();
+                slice.position(offset).limit(offset + length);
+                position += length;
+                return new RecordedGame(slice.slice());
+            }
+
+            private void ensureMapped(int bytes) {
+                if (position + bytes > size) {
+                    throw new IllegalStateException("Truncated game record at offset " + position);
+                }
+                if (window != null && position + bytes <= windowStart + window.limit()) {
+                    return;
+                }
+                try {
+                    windowStart = position;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(WINDOW_BYTES, size - position));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot map game record archive", e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** One game, backed directly by the mapped archive. */
+    public static final class RecordedGame {
+        private final ByteBuffer data;
+
+        RecordedGame(ByteBuffer data) {
+            this.data = data;
+        }
+
+        public int plyCount() {
+            return data.getShort(0) & 0xFFFF;
+        }
+
+        /** The game's final message, or null if the game was recorded unfinished. */
+        public ReturnPlay.Message result() {
+            int code = data.get(2) & 0xFF;
+            ReturnPlay.Message[] messages = ReturnPlay.Message.values();
+            return code < messages.length ? messages[code] : null;
+        }
+
+        public short move(int ply) {
+            return data.getShort(GameRecord.GAME_HEADER_BYTES + ply * 2);
+        }
+
+        /** Replay the first {@code plies} moves onto a board that holds the starting position. */
+        public Board replay(Board board, int plies) {
+            for (int i = 0; i < plies; i++) {
+                GameRecord.apply(board, move(i));
+            }
+            return board;
+        }
+
+        public Board replay() {
+            return replay(new Board(), plyCount());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends games in the {@link GameRecord} format, fed with each {@link Game#play} result
+ * of the games it records.
+ */
+public class GameRecordWriter implements Closeable {
+    private final FileChannel channel;
+    private short[] moves = new short[128];
+    private int plies = 0;
+
+    public GameRecordWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(GameRecord.FILE_HEADER_BYTES);
+            header.put(GameRecord.MAGIC).put(GameRecord.VERSION).flip();
+            writeFully(header);
+        }
+    }
+
+    /**
+     * Record the outcome of one play call on the given game. Illegal moves are ignored;
+     * accepted moves are appended as the game applied them, whatever notation they were
+     * played in, and a game-ending result writes the game out.
+     */
+    public void record(Game game, ReturnPlay result) throws IOException {
+        if (result.message == ReturnPlay.Message.ILLEGAL_MOVE) {
+            return;
+        }
+        if (result.message != ReturnPlay.Message.RESIGN_BLACK_WINS
+                && result.message != ReturnPlay.Message.RESIGN_WHITE_WINS) {
+            addMove((short) game.lastMove());
+        }
+        if (result.message != null && result.message != ReturnPlay.Message.CHECK) {
+            endGame(result.message);
+        }
+    }
+
+    /** Append an already packed move to the current game. */
+    public void addMove(short move) {
+        if (plies == GameRecord.MAX_PLIES) {
+            throw new IllegalStateException("Game exceeds " + GameRecord.MAX_PLIES + " plies");
+        }
+        if (plies == moves.length) {
+            short[] grown = new short[moves.length * 2];
+            System.arraycopy(moves, 0, grown, 0, plies);
+            moves = grown;
+        }
+        moves[plies++] = move;
+    }
+
+    /** Write the current game with the given result (null for unfinished) and start a new one. */
+    public void endGame(ReturnPlay.Message result) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(GameRecord.GAME_HEADER_BYTES + plies * 2);
+        buffer.putShort((short) plies);
+        buffer.put((byte) (result == null ? GameRecord.UNFINISHED : result.ordinal()));
+        for (int i = 0; i < plies; i++) {
+            buffer.putShort(moves[i]);
+        }
+        buffer.flip();
+        writeFully(buffer);
+        plies = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (plies > 0) {
+                endGame(null);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable store for many concurrent games: a write-ahead log of moves plus periodic snapshots.
+ *
+ * {@link Game#play} only hands each move to a bounded queue; a single writer thread drains it
+ * in batches, appends the batch to the current log segment through a {@link FileChannel} and
+ * forces it once per batch (group commit). Every {@code snapshotEvery} records the writer rolls
+ * to a new segment and writes all unfinished games as {@link PackedPosition}s, after which the
+ * older segments are deleted. Opening a store recovers from the newest snapshot and replays the
+ * log tail through {@link Board}; a torn record at the end of the log is discarded.
+ *
+ * Directory layout: {@code wal-<n>.log} segments and {@code snapshot-<n>.snap}, where a snapshot
+ * covers every segment numbered below {@code n}.
+ */
+public class GameStore implements Closeable {
+    private static final byte[] SNAPSHOT_MAGIC = { 'C', 'H', 'S', 'N' };
+    private static final byte VERSION = 1;
+    private static final int RECORD_HEADER_BYTES = 6; // u16 body length + CRC32 of the body
+    private static final int MAX_BATCH = 4096;
+    private static final int NO_RESULT = 0xFF;
+
+    private static final byte START = 0;
+    private static final byte MOVE = 1;
+    private static final byte END = 2;
+
+    private final Path dir;
+    private final int snapshotEvery;
+    private final BlockingQueue<Entry> queue;
+    private final Map<String, GameState> states = new HashMap<>(); // writer thread only, after recovery
+    private final Map<String, Game> recovered = new ConcurrentHashMap<>();
+    private final Object appendLock = new Object();
+    private final Object durableLock = new Object();
+    private final Thread writer;
+    private volatile long appended; // sequence of the last queued entry, written under appendLock
+    private long durable; // sequence of the last entry on disk, guarded by durableLock
+    private volatile IOException failure = null;
+    private volatile boolean running = true;
+    private FileChannel segment;
+    private long segmentNumber;
+    private long sinceSnapshot;
+
+    /** Open (and recover) the store in {@code dir} with a 64k-record queue and a snapshot every 100k records. */
+    public GameStore(Path dir) throws IOException {
+        this(dir, 1 << 16, 100_000);
+    }
+
+    public GameStore(Path dir, int queueCapacity, int snapshotEvery) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.snapshotEvery = snapshotEvery;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        recover();
+        this.writer = new Thread(this::writeLoop, "chess-game-store");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Start a new game under the given id; its moves are logged from now on. */
+    public Game create(String id) {
+        return create(id, new Game());
+    }
+
+    /** Log a freshly constructed game (one with an opening book, or from a FEN) under the given id, with its starting position. */
+    public Game create(String id, Game game) {
+        if (game.getPlyCount() != 0) {
+            throw new IllegalArgumentException("Only new games can be stored, " + id + " has moves");
+        }
+        enqueue(new Entry(START, encodeId(id), 0, (short) 0, NO_RESULT, PackedPosition.pack(game.getBoard())));
+        game.attach(this, id);
+        return game;
+    }
+
+    /**
+     * Unfinished games found when the store was opened, by id, already attached to this store.
+     * The map is live: games are not removed from it as they finish.
+     * The log holds positions and moves only, so these games come back without an opening book or
+     * tablebase and play on without either. A last move logged after the newest snapshot is
+     * reported by {@link Game#getLastMoveUci}; its SAN is not logged.
+     */
+    public Map<String, Game> recoveredGames() {
+        return Collections.unmodifiableMap(recovered);
+    }
+
+    /** Block until every move logged so far is on disk. */
+    public void flush() throws IOException, InterruptedException {
+        long target = appended;
+        synchronized (durableLock) {
+            while (durable < target && failure == null) {
+                durableLock.wait();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /** Flush the log and stop the writer; later moves of attached games fail. */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (segment.isOpen()) {
+            segment.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    void logMove(String id, int ply, short move, ReturnPlay.Message result) {
+        enqueue(new Entry(MOVE, encodeId(id), ply, move, result == null ? NO_RESULT : result.ordinal(), null));
+    }
+
+    void logEnd(String id, int ply, ReturnPlay.Message result) {
+        enqueue(new Entry(END, encodeId(id), ply, (short) 0, result.ordinal(), null));
+    }
+
+    private void enqueue(Entry entry) {
+        if (failure != null) {
+            throw new UncheckedIOException("Game store failed", failure);
+        }
+        if (!running) {
+            throw new IllegalStateException("Game store is closed");
+        }
+        // Numbered and queued together, so the queue holds entries in sequence order
+        synchronized (appendLock) {
+            entry.sequence = appended + 1;
+            try {
+                // A full queue means the disk is behind: the caller waits rather than losing moves
+                queue.put(entry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while logging a move", e);
+            }
+            appended = entry.sequence;
+        }
+    }
+
+    private static byte[] encodeId(String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > 255) {
+            throw new IllegalArgumentException("Game id must be 1-255 bytes: " + id);
+        }
+        return bytes;
+    }
+
+    // One logged event, immutable once queued; a START carries the game's starting position
+    private static final class Entry {
+        final byte type;
+        final byte[] id;
+        final int ply;
+        final short move;
+        final int result;
+        final byte[] position;
+        long sequence; // set by enqueue
+
+        Entry(byte type, byte[] id, int ply, short move, int result, byte[] position) {
+            this.type = type;
+            this.id = id;
+            this.ply = ply;
+            this.move = move;
+            this.result = result;
+            this.position = position;
+        }
+
+        int bodyBytes() {
+            return 7 + id.length + (position == null ? 0 : position.length);
+        }
+    }
+
+    // What the writer knows of a game: its last snapshot position plus the moves logged since
+    private static final class GameState {
+        byte[] position;
+        short[] tail = new short[8];
+        int tailLength;
+        int plies;
+        int result = NO_RESULT;
+
+        GameState(byte[] position, int plies) {
+            this.position = position;
+            this.plies = plies;
+        }
+
+        void apply(Entry e) {
+            if (e.type == MOVE) {
+                if (tailLength == tail.length) {
+                    tail = Arrays.copyOf(tail, tailLength * 2);
+                }
+                tail[tailLength++] = e.move;
+                plies++;
+            }
+            result = e.result;
+        }
+
+        Board board() {
+            Board board = PackedPosition.unpack(position);
+            for (int i = 0; i < tailLength; i++) {
+                GameRecord.apply(board, tail[i]);
+            }
+            return board;
+        }
+
+        // Fold the tail into the position so the snapshot holds everything
+        void compact() {
+            if (tailLength > 0) {
+                position = PackedPosition.pack(board());
+                tailLength = 0;
+                tail = new short[8];
+            }
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_BATCH * (RECORD_HEADER_BYTES + 7 + 255 + PackedPosition.BYTES));
+        CRC32 crc = new CRC32();
+        try {
+            while (running || !queue.isEmpty()) {
+                Entry first = queue.poll(10, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                buffer.clear();
+                for (Entry e : batch) {
+                    int bodyStart = buffer.position() + RECORD_HEADER_BYTES;
+                    buffer.putShort((short) e.bodyBytes()).putInt(0);
+                    buffer.put(e.type).putShort((short) e.ply).putShort(e.move).put((byte) e.result)
+                            .put((byte) e.id.length).put(e.id);
+                    if (e.position != null) {
+                        buffer.put(e.position);
+                    }
+                    ByteBuffer body = buffer.duplicate();
+                    body.position(bodyStart).limit(buffer.position());
+                    crc.reset();
+                    crc.update(body);
+                    buffer.putInt(bodyStart - 4, (int) crc.getValue());
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    segment.write(buffer);
+                }
+                segment.force(false);
+                synchronized (durableLock) {
+                    durable = batch.get(batch.size() - 1).sequence;
+                    durableLock.notifyAll();
+                }
+                for (Entry e : batch) {
+                    String id = new String(e.id, StandardCharsets.UTF_8);
+                    if (e.type == START) {
+                        states.put(id, new GameState(e.position, 0));
+                    } else {
+                        GameState state = states.get(id);
+                        if (state != null) state.apply(e);
+                    }
+                }
+                sinceSnapshot += batch.size();
+                batch.clear();
+                if (sinceSnapshot >= snapshotEvery) {
+                    snapshot();
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            failure = new IOException("Game store writer interrupted", e);
+        } finally {
+            synchronized (durableLock) {
+                durableLock.notifyAll();
+            }
+        }
+    }
+
+    // Roll the log, write every unfinished game, then drop what the snapshot supersedes
+    private void snapshot() throws IOException {
+        segment.close();
+        segmentNumber++;
+        segment = openSegment(segmentNumber);
+        states.values().removeIf(s -> s.result != NO_RESULT);
+        ByteBuffer out = ByteBuffer.allocate(13 + states.size() * (1 + 255 + 2 + PackedPosition.BYTES));
+        out.put(SNAPSHOT_MAGIC).put(VERSION).putInt(states.size());
+        for (Map.Entry<String, GameState> e : states.entrySet()) {
+            GameState state = e.getValue();
+            state.compact();
+            byte[] id = e.getKey().getBytes(StandardCharsets.UTF_8);
+            out.put((byte) id.length).put(id).putShort((short) state.plies).put(state.position);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        out.flip();
+        Path tmp = dir.resolve("snapshot.tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(name("snapshot-", segmentNumber, ".snap")), StandardCopyOption.ATOMIC_MOVE);
+        for (Path old : list("wal-", ".log")) {
+            if (number(old) < segmentNumber) Files.delete(old);
+        }
+        for (Path old : list("snapshot-", ".snap")) {
+            if (number(old) < segmentNumber) Files.delete(old);
+        }
+        sinceSnapshot = 0;
+    }
+
+    private void recover() throws IOException {
+        long base = 0;
+        List<Path> snapshots = list("snapshot-", ".snap");
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            if (readSnapshot(snapshots.get(i))) {
+                base = number(snapshots.get(i));
+                break;
+            }
+            states.clear(); // unreadable snapshot: fall back to the one before it
+        }
+        segmentNumber = base;
+        for (Path log : list("wal-", ".log")) {
+            long n = number(log);
+            if (n < base) continue;
+            replaySegment(log);
+            segmentNumber = Math.max(segmentNumber, n + 1);
+        }
+        // Rebuild the unfinished games in parallel; each replays its own tail through Board
+        states.entrySet().parallelStream()
+                .filter(e -> e.getValue().result == NO_RESULT)
+                .forEach(e -> {
+                    GameState state = e.getValue();
+                    Game game = new Game(state.board(), state.plies, false);
+                    if (state.tailLength > 0) {
+                        game.restoreLastMove(state.tail[state.tailLength - 1], null);
+                    }
+                    game.attach(this, e.getKey());
+                    recovered.put(e.getKey(), game);
+                });
+        states.values().removeIf(s -> s.result != NO_RESULT);
+        segment = openSegment(segmentNumber);
+    }
+
+    private boolean readSnapshot(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.remaining() < 13) return false;
+        CRC32 crc = new CRC32();
+        crc.update(in.array(), 0, in.limit() - 4);
+        if ((int) crc.getValue() != in.getInt(in.limit() - 4)) return false;
+        for (byte b : SNAPSHOT_MAGIC) {
+            if (in.get() != b) return false;
+        }
+        if (in.get() != VERSION) return false;
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            byte[] id = new byte[in.get() & 0xFF];
+            in.get(id);
+            int plies = in.getShort() & 0xFFFF;
+            byte[] position = new byte[PackedPosition.BYTES];
+            in.get(position);
+            states.put(new String(id, StandardCharsets.UTF_8), new GameState(position, plies));
+        }
+        return true;
+    }
+
+    // Apply every intact record of a segment; cut the segment at the first torn one
+    private void replaySegment(Path log) throws IOException {
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32 crc = new CRC32();
+            while (in.remaining() >= RECORD_HEADER_BYTES) {
+                int start = in.position();
+                int length = in.getShort() & 0xFFFF;
+                int checksum = in.getInt();
+                if (length < 7 || in.remaining() < length) {
+                    in.position(start);
+                    break;
+                }
+                ByteBuffer body = in.slice();
+                body.limit(length);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    in.position(start);
+                    break;
+                }
+                byte type = body.get();
+                int ply = body.getShort() & 0xFFFF;
+                short move = body.getShort();
+                int result = body.get() & 0xFF;
+                byte[] id = new byte[body.get() & 0xFF];
+                body.get(id);
+                if (type == START && body.remaining() < PackedPosition.BYTES) {
+                    // Every START carries its game's position; one without is not a record we wrote
+                    in.position(start);
+                    break;
+                }
+                in.position(in.position() + length);
+                String key = new String(id, StandardCharsets.UTF_8);
+                if (type == START) {
+                    byte[] position = new byte[PackedPosition.BYTES];
+                    body.get(position);
+                    states.put(key, new GameState(position, 0));
+                    continue;
+                }
+                GameState state = states.get(key);
+                // Skip records of games that finished before the snapshot, or already applied
+                if (state != null && state.result == NO_RESULT && ply == state.plies) {
+                    state.apply(new Entry(type, id, ply, move, result, null));
+                }
+            }
+            if (in.position() < channel.size()) {
+                channel.truncate(in.position());
+            }
+        }
+    }
+
+    private FileChannel openSegment(long n) throws IOException {
+        return FileChannel.open(dir.resolve(name("wal-", n, ".log")), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> list(String prefix, String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(dir)) {
+            entries.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(suffix);
+            }).forEach(files::add);
+        }
+        files.sort(null); // zero-padded numbers sort by name
+        return files;
+    }
+
+    private static String name(String prefix, long n, String suffix) {
+        return String.format("%s%016d%s", prefix, n, suffix);
+    }
+
+    private static long number(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+}
@@ -0,0 +1,79 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent-hash ring mapping game ids to node addresses ("host:port").
+ * Each node is placed at {@value #VIRTUAL_NODES} points so load stays even and adding or
+ * removing a node moves only about 1/n of the games. Membership changes return a new ring.
+ */
+final class HashRing {
+    static final int VIRTUAL_NODES = 128;
+
+    private final List<String> nodes;
+    private final TreeMap<Long, String> points = new TreeMap<>();
+
+    private HashRing(List<String> nodes) {
+        List<String> sorted = new ArrayList<>(nodes);
+        Collections.sort(sorted);
+        this.nodes = Collections.unmodifiableList(sorted);
+        for (String node : sorted) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                points.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    static HashRing of(Collection<String> nodes) {
+        return new HashRing(new ArrayList<>(nodes));
+    }
+
+    HashRing with(String node) {
+        if (nodes.contains(node)) return this;
+        List<String> next = new ArrayList<>(nodes);
+        next.add(node);
+        return new HashRing(next);
+    }
+
+    HashRing without(String node) {
+        if (!nodes.contains(node)) return this;
+        List<String> next = new ArrayList<>(nodes);
+        next.remove(node);
+        return new HashRing(next);
+    }
+
+    /** Node owning the key, or null on an empty ring. */
+    String owner(String key) {
+        if (points.isEmpty()) return null;
+        Map.Entry<Long, String> e = points.ceilingEntry(hash(key));
+        return (e != null ? e : points.firstEntry()).getValue();
+    }
+
+    List<String> nodes() {
+        return nodes;
+    }
+
+    boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    // FNV-1a followed by a 64-bit finalizer, so similar ids land far apart
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
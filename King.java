@@ -31,6 +31,11 @@ public class King extends Piece {
         return false;
     }
 
+    @Override
+    public long attacks(int file, int rank, long occupied) {
+        return LegalityChecker.steps(file, rank, LegalityChecker.KING_STEPS);
+    }
+
     private boolean canCastle(int startFile, int startRank, int endFile, Board board) {
         if (hasMoved) return false;
         int direction = (endFile > startFile) ? 1 : -1;
@@ -11,4 +11,9 @@ public class Knight extends Piece {
         int dy = Math.abs(endRank - startRank);
         return (dx == 1 && dy == 2) || (dx == 2 && dy == 1);
     }
+
+    @Override
+    public long attacks(int file, int rank, long occupied) {
+        return LegalityChecker.steps(file, rank, LegalityChecker.KNIGHT_STEPS);
+    }
 }
@@ -0,0 +1,255 @@
+package chess;
+
+/**
+ * Checkers, pins and enemy attacks of one position, computed once so that each
+ * candidate move is validated with a few mask tests instead of a board clone.
+ * Squares are indexed as rank * 8 + file.
+ */
+final class LegalityChecker {
+    static final int[][] KNIGHT_STEPS = {
+        { 1, 2 }, { 2, 1 }, { 2, -1 }, { 1, -2 }, { -1, -2 }, { -2, -1 }, { -2, 1 }, { -1, 2 }
+    };
+    static final int[][] KING_STEPS = {
+        { 1, 0 }, { 1, 1 }, { 0, 1 }, { -1, 1 }, { -1, 0 }, { -1, -1 }, { 0, -1 }, { 1, -1 }
+    };
+    static final int[][] ROOK_DIRECTIONS = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+    static final int[][] BISHOP_DIRECTIONS = { { 1, 1 }, { 1, -1 }, { -1, 1 }, { -1, -1 } };
+
+    private final Board board;
+    private final Piece.Color color;
+    private final int kingSquare;          // -1 if the side to move has no king
+    private final long occupied;
+    private final long enemyAttacks;       // computed with our king removed, so it cannot step back along a checking ray
+    private final long checkers;
+    private final long evasionMask;        // squares a non-king move must land on: everything, capture/block, or nothing
+    private final long[] pinRays = new long[64]; // ray from the king to the pinner (inclusive), 0 if not pinned
+
+    LegalityChecker(Board board, Piece.Color color) {
+        this.board = board;
+        this.color = color;
+
+        long occ = 0L;
+        int king = -1;
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece p = board.getPiece(file, rank);
+                if (p == null) continue;
+                occ |= bit(file, rank);
+                if (p instanceof King && p.getColor() == color) {
+                    king = square(file, rank);
+                }
+            }
+        }
+        this.occupied = occ;
+        this.kingSquare = king;
+
+        long kingBit = king >= 0 ? 1L << king : 0L;
+        long attacks = 0L;
+        long checking = 0L;
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece p = board.getPiece(file, rank);
+                if (p == null || p.getColor() == color) continue;
+                long pieceAttacks = p.attacks(file, rank, occ & ~kingBit);
+                attacks |= pieceAttacks;
+                if ((pieceAttacks & kingBit) != 0) {
+                    checking |= bit(file, rank);
+                }
+            }
+        }
+        this.enemyAttacks = attacks;
+        this.checkers = checking;
+
+        if (Long.bitCount(checking) == 0) {
+            this.evasionMask = -1L;
+        } else if (Long.bitCount(checking) == 1) {
+            this.evasionMask = checking | between(king, Long.numberOfTrailingZeros(checking));
+        } else {
+            this.evasionMask = 0L; // double check: only the king may move
+        }
+
+        if (king >= 0) {
+            findPins(ROOK_DIRECTIONS, true);
+            findPins(BISHOP_DIRECTIONS, false);
+        }
+    }
+
+    boolean inCheck() {
+        return checkers != 0;
+    }
+
+    /** Legality of a pseudo-legal normal move (not castling, not en passant). */
+    boolean isLegal(int fromFile, int fromRank, int toFile, int toRank) {
+        int from = square(fromFile, fromRank);
+        long to = bit(toFile, toRank);
+        if (from == kingSquare) {
+            return (enemyAttacks & to) == 0;
+        }
+        if ((evasionMask & to) == 0) {
+            return false;
+        }
+        return pinRays[from] == 0 || (pinRays[from] & to) != 0;
+    }
+
+    /**
+     * Legality of a pseudo-legal en passant capture. Both pawns leave their squares at once,
+     * which can uncover a rook or queen along the king's rank even when neither pawn is pinned,
+     * so slider attacks are recomputed on the resulting occupancy.
+     */
+    boolean isLegalEnPassant(int fromFile, int fromRank, int toFile, int toRank) {
+        if (kingSquare < 0) return true;
+        long captured = bit(toFile, fromRank);
+        // A knight or pawn check can only be answered by capturing the checker
+        long contactCheckers = 0L;
+        for (long c = checkers; c != 0; c &= c - 1) {
+            int sq = Long.numberOfTrailingZeros(c);
+            if (!isSlider(board.getPiece(sq & 7, sq >>> 3))) {
+                contactCheckers |= 1L << sq;
+            }
+        }
+        if ((contactCheckers & ~captured) != 0) {
+            return false;
+        }
+        long occ = (occupied & ~bit(fromFile, fromRank) & ~captured) | bit(toFile, toRank);
+        return !isAttackedBySlider(kingSquare, occ);
+    }
+
+    /** Legality of castling with the king on (fromFile, rank) towards toFile. */
+    boolean isLegalCastling(int fromFile, int rank, int toFile) {
+        Piece king = board.getPiece(fromFile, rank);
+        if (!(king instanceof King) || king.getColor() != color) return false;
+        if (checkers != 0) return false;
+        int direction = (toFile > fromFile) ? 1 : -1;
+        int rookFile = (direction == 1) ? 7 : 0;
+        int right = (color == Piece.Color.WHITE)
+                ? (direction == 1 ? Board.WHITE_KING_SIDE : Board.WHITE_QUEEN_SIDE)
+                : (direction == 1 ? Board.BLACK_KING_SIDE : Board.BLACK_QUEEN_SIDE);
+        if (!board.hasCastlingRight(right) || fromFile != 4 || rank != (color == Piece.Color.WHITE ? 0 : 7)) return false;
+        Piece rook = board.getPiece(rookFile, rank);
+        if (!(rook instanceof Rook) || rook.getColor() != color) return false;
+        for (int f = fromFile + direction; f != rookFile; f += direction) {
+            if (board.getPiece(f, rank) != null) return false;
+        }
+        // The king may not pass through or land on an attacked square
+        return (enemyAttacks & (bit(fromFile + direction, rank) | bit(toFile, rank))) == 0;
+    }
+
+    private void findPins(int[][] directions, boolean straight) {
+        int kingFile = kingSquare & 7;
+        int kingRank = kingSquare >>> 3;
+        for (int[] d : directions) {
+            long ray = 0L;
+            int pinned = -1;
+            int f = kingFile + d[0];
+            int r = kingRank + d[1];
+            while (f >= 0 && f < 8 && r >= 0 && r < 8) {
+                ray |= bit(f, r);
+                Piece p = board.getPiece(f, r);
+                if (p != null) {
+                    if (p.getColor() == color) {
+                        if (pinned >= 0) break; // two of our pieces: nothing is pinned
+                        pinned = square(f, r);
+                    } else {
+                        if (pinned >= 0 && slidesAlong(p, straight)) {
+                            pinRays[pinned] = ray;
+                        }
+                        break;
+                    }
+                }
+                f += d[0];
+                r += d[1];
+            }
+        }
+    }
+
+    // Squares outside occ are treated as empty even if the board still has a piece there
+    private boolean isAttackedBySlider(int target, long occ) {
+        int file = target & 7;
+        int rank = target >>> 3;
+        return sliderOnRay(file, rank, ROOK_DIRECTIONS, true, occ)
+                || sliderOnRay(file, rank, BISHOP_DIRECTIONS, false, occ);
+    }
+
+    private boolean sliderOnRay(int file, int rank, int[][] directions, boolean straight, long occ) {
+        for (int[] d : directions) {
+            int f = file + d[0];
+            int r = rank + d[1];
+            while (f >= 0 && f < 8 && r >= 0 && r < 8) {
+                long b = bit(f, r);
+                if ((occ & b) != 0) {
+                    Piece p = board.getPiece(f, r);
+                    if (p != null && p.getColor() != color && slidesAlong(p, straight)) {
+                        return true;
+                    }
+                    break;
+                }
+                f += d[0];
+                r += d[1];
+            }
+        }
+        return false;
+    }
+
+    private static boolean slidesAlong(Piece p, boolean straight) {
+        return p instanceof Queen || (straight ? p instanceof Rook : p instanceof Bishop);
+    }
+
+    private static boolean isSlider(Piece p) {
+        return p instanceof Queen || p instanceof Rook || p instanceof Bishop;
+    }
+
+    // Squares strictly between two squares on a common rank, file or diagonal; 0 otherwise
+    private static long between(int a, int b) {
+        int df = Integer.compare(b & 7, a & 7);
+        int dr = Integer.compare(b >>> 3, a >>> 3);
+        int fileDistance = Math.abs((b & 7) - (a & 7));
+        int rankDistance = Math.abs((b >>> 3) - (a >>> 3));
+        if (fileDistance != 0 && rankDistance != 0 && fileDistance != rankDistance) {
+            return 0L;
+        }
+        long result = 0L;
+        int f = (a & 7) + df;
+        int r = (a >>> 3) + dr;
+        while (square(f, r) != b) {
+            result |= bit(f, r);
+            f += df;
+            r += dr;
+        }
+        return result;
+    }
+
+    // Attack geometry shared by the Piece subclasses
+    static long steps(int file, int rank, int[][] offsets) {
+        long result = 0L;
+        for (int[] o : offsets) {
+            result |= bit(file + o[0], rank + o[1]);
+        }
+        return result;
+    }
+
+    static long rays(int file, int rank, int[][] directions, long occupied) {
+        long result = 0L;
+        for (int[] d : directions) {
+            int f = file + d[0];
+            int r = rank + d[1];
+            while (f >= 0 && f < 8 && r >= 0 && r < 8) {
+                long b = bit(f, r);
+                result |= b;
+                if ((occupied & b) != 0) break;
+                f += d[0];
+                r += d[1];
+            }
+        }
+        return result;
+    }
+
+    static int square(int file, int rank) {
+        return rank * 8 + file;
+    }
+
+    // Bit for a square, or 0 when (file, rank) is off the board
+    static long bit(int file, int rank) {
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) return 0L;
+        return 1L << square(file, rank);
+    }
+}
@@ -0,0 +1,239 @@
+package chess;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Low-overhead counters and latency histograms for the rule engine.
+ * Enabled with -Dchess.metrics=true; when disabled every hook is a constant-folded no-op.
+ */
+public final class Metrics {
+    public enum Phase { PLAY, PARSE, LEGALITY, CHECK, CHECKMATE, STALEMATE, BOARD_STATE }
+
+    public static final boolean ENABLED = Boolean.getBoolean("chess.metrics");
+    // Plays slower than this are counted and remembered so pathological positions can be found
+    private static final long SLOW_PLAY_NANOS = Long.getLong("chess.metrics.slowPlayNanos", 10_000_000L);
+    private static final String MBEAN_NAME = "chess:type=Metrics";
+
+    private static final Map<Phase, Histogram> histograms = new EnumMap<>(Phase.class);
+    private static final LongAdder slowPlays = new LongAdder();
+    private static final AtomicReference<String> lastSlowMove = new AtomicReference<>();
+
+    static {
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase, new Histogram());
+        }
+        if (ENABLED) {
+            registerMBean();
+        }
+    }
+
+    private Metrics() { }
+
+    /** Start timestamp for a timed section, or 0 when metrics are off. */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    /** Record the time elapsed since {@code startNanos} against the given phase. */
+    static void record(Phase phase, long startNanos) {
+        if (!ENABLED) return;
+        histograms.get(phase).record(System.nanoTime() - startNanos);
+    }
+
+    /** Record a whole play call, remembering the move text if it was slow. */
+    static void recordPlay(String move, long startNanos) {
+        if (!ENABLED) return;
+        long elapsed = System.nanoTime() - startNanos;
+        histograms.get(Phase.PLAY).record(elapsed);
+        if (elapsed >= SLOW_PLAY_NANOS) {
+            slowPlays.increment();
+            lastSlowMove.set(move);
+        }
+    }
+
+    /** Point-in-time view of all phases, in {@link Phase} order. */
+    public static Map<String, PhaseSnapshot> snapshot() {
+        Map<String, PhaseSnapshot> result = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            result.put(phase.name(), histograms.get(phase).snapshot());
+        }
+        return result;
+    }
+
+    public static PhaseSnapshot snapshot(Phase phase) {
+        return histograms.get(phase).snapshot();
+    }
+
+    public static long getSlowPlayCount() {
+        return slowPlays.sum();
+    }
+
+    public static String getLastSlowMove() {
+        return lastSlowMove.get();
+    }
+
+    public static void reset() {
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        slowPlays.reset();
+        lastSlowMove.set(null);
+    }
+
+    private static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MBean(), name);
+            }
+        } catch (Exception e) {
+            // JMX is best effort; the snapshot API keeps working without it
+        }
+    }
+
+    /** Immutable statistics for one phase; latencies are in nanoseconds. */
+    public static final class PhaseSnapshot {
+        private final long count;
+        private final long mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        PhaseSnapshot(long count, long mean, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() { return count; }
+        public long getMean() { return mean; }
+        public long getP50() { return p50; }
+        public long getP90() { return p90; }
+        public long getP99() { return p99; }
+        public long getP999() { return p999; }
+        public long getMax() { return max; }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " mean=" + mean + " p50=" + p50 + " p90=" + p90
+                    + " p99=" + p99 + " p99.9=" + p999 + " max=" + max;
+        }
+    }
+
+    /**
+     * Lock-free log-linear histogram: each power of two is split into 16 sub-buckets,
+     * so recorded values keep roughly 6% precision up to 2^63 ns.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+        void record(long value) {
+            if (value < 0) value = 0;
+            counts.incrementAndGet(indexOf(value));
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        static int indexOf(long value) {
+            if (value < SUB_COUNT) return (int) value;
+            int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            int sub = (int) (value >>> magnitude) - SUB_COUNT;
+            return (magnitude + 1) * SUB_COUNT + sub;
+        }
+
+        // Upper bound of the values that land in a bucket
+        static long valueOf(int index) {
+            if (index < SUB_COUNT) return index;
+            int magnitude = index / SUB_COUNT - 1;
+            long sub = index % SUB_COUNT + SUB_COUNT;
+            return ((sub + 1) << magnitude) - 1;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            sum.reset();
+            max.reset();
+        }
+
+        PhaseSnapshot snapshot() {
+            long[] copy = new long[BUCKETS];
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] = counts.get(i);
+                n += copy[i];
+            }
+            long mean = n == 0 ? 0 : sum.sum() / n;
+            long maxValue = max.get();
+            return new PhaseSnapshot(n, mean,
+                    percentile(copy, n, 0.50, maxValue),
+                    percentile(copy, n, 0.90, maxValue),
+                    percentile(copy, n, 0.99, maxValue),
+                    percentile(copy, n, 0.999, maxValue),
+                    maxValue);
+        }
+
+        private static long percentile(long[] copy, long n, double fraction, long maxValue) {
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(fraction * n);
+            long seen = 0;
+            for (int i = 0; i < copy.length; i++) {
+                seen += copy[i];
+                if (seen >= rank) {
+                    return Math.min(valueOf(i), maxValue);
+                }
+            }
+            return maxValue;
+        }
+    }
+
+    private static final class MBean implements MetricsMXBean {
+        @Override
+        public Map<String, PhaseSnapshot> getPhases() {
+            return snapshot();
+        }
+
+        @Override
+        public long getPlayCount() {
+            return snapshot(Phase.PLAY).getCount();
+        }
+
+        @Override
+        public long getSlowPlayCount() {
+            return Metrics.getSlowPlayCount();
+        }
+
+        @Override
+        public String getLastSlowMove() {
+            return Metrics.getLastSlowMove();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
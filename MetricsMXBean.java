@@ -0,0 +1,16 @@
+package chess;
+
+import java.util.Map;
+
+/** JMX view of {@link Metrics}, registered as chess:type=Metrics when metrics are enabled. */
+public interface MetricsMXBean {
+    Map<String, Metrics.PhaseSnapshot> getPhases();
+
+    long getPlayCount();
+
+    long getSlowPlayCount();
+
+    String getLastSlowMove();
+
+    void reset();
+}
@@ -0,0 +1,285 @@
+package chess;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Reactive front-end to the engine: subscribes to a stream of (game id, move) events and
+ * publishes one result per event to a single downstream subscriber.
+ *
+ * Each game has its own lane that plays its moves one at a time on the executor, so moves of
+ * one game are applied (and published) in arrival order while different games run in parallel.
+ * At most {@code capacity} events are requested from upstream beyond what downstream has
+ * consumed; a slow subscriber therefore slows the producer instead of growing a queue.
+ */
+public class MoveStream implements Flow.Processor<MoveStream.MoveEvent, MoveStream.MoveResult> {
+    private static final int LANE_BATCH = 32; // moves a lane plays before yielding its thread
+
+    private final Executor executor;
+    private final int capacity;
+    private final Function<String, Game> newGame;
+    private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final Queue<MoveResult> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicReference<Flow.Subscriber<? super MoveResult>> downstream = new AtomicReference<>();
+    private volatile Flow.Subscription upstream;
+    private volatile boolean upstreamDone = false;
+    private volatile Throwable error = null;
+    private volatile boolean cancelled = false;
+    private boolean terminated = false; // only touched inside drain()
+
+    /** Play on the common pool with up to 1024 events in flight, starting a new game per unknown id. */
+    public MoveStream() {
+        this(ForkJoinPool.commonPool(), 1024, id -> new Game());
+    }
+
+    /**
+     * @param newGame creates the game for an id seen for the first time, e.g. {@link GameStore#create}
+     */
+    public MoveStream(Executor executor, int capacity, Function<String, Game> newGame) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.executor = executor;
+        this.capacity = capacity;
+        this.newGame = newGame;
+    }
+
+    /** A move for a game, in the text form {@link Game#play} accepts. */
+    public static final class MoveEvent {
+        private final String gameId;
+        private final String move;
+
+        public MoveEvent(String gameId, String move) {
+            this.gameId = gameId;
+            this.move = move;
+        }
+
+        public String getGameId() { return gameId; }
+        public String getMove() { return move; }
+    }
+
+    /** The outcome of one {@link MoveEvent}. */
+    public static final class MoveResult {
+        private final String gameId;
+        private final String move;
+        private final ReturnPlay result;
+        private final String san;
+
+        MoveResult(String gameId, String move, ReturnPlay result, String san) {
+            this.gameId = gameId;
+            this.move = move;
+            this.result = result;
+            this.san = san;
+        }
+
+        public String getGameId() { return gameId; }
+        public String getMove() { return move; }
+        public ReturnPlay getResult() { return result; }
+        /** The move in SAN, with check or mate suffix; null if it was rejected or a resignation. */
+        public String getSan() { return san; }
+    }
+
+    /** Stop tracking a game; a later event with the same id starts a new one. */
+    public void removeGame(String gameId) {
+        lanes.remove(gameId);
+    }
+
+    // Upstream side
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null || cancelled) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        subscription.request(capacity);
+    }
+
+    @Override
+    public void onNext(MoveEvent event) {
+        if (cancelled) return;
+        lanes.computeIfAbsent(event.gameId, Lane::new).offer(event);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    // Downstream side
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super MoveResult> subscriber) {
+        if (!downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) { }
+                @Override public void cancel() { }
+            });
+            subscriber.onError(new IllegalStateException("MoveStream supports a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("request must be positive: " + n);
+                    upstreamDone = true;
+                    cancelUpstream();
+                } else {
+                    demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+            }
+        });
+        drain();
+    }
+
+    private void cancelUpstream() {
+        Flow.Subscription s = upstream;
+        if (s != null) {
+            s.cancel();
+        }
+    }
+
+    // Deliver ready results against demand; only one thread at a time runs the loop
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super MoveResult> subscriber = downstream.get();
+            if (subscriber != null && !terminated && !cancelled) {
+                long requested = demand.get();
+                long emitted = 0;
+                MoveResult next;
+                while (emitted < requested && (next = ready.poll()) != null) {
+                    subscriber.onNext(next);
+                    emitted++;
+                }
+                if (emitted > 0) {
+                    if (requested != Long.MAX_VALUE) {
+                        demand.addAndGet(-emitted);
+                    }
+                    // Each delivered result frees one slot: ask upstream for one more event
+                    Flow.Subscription s = upstream;
+                    if (!upstreamDone && s != null) {
+                        s.request(emitted);
+                    }
+                }
+                // Lanes go idle only after publishing, so check them before the ready queue
+                if (upstreamDone && lanesIdle() && ready.isEmpty()) {
+                    terminated = true;
+                    if (error != null) {
+                        subscriber.onError(error);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private boolean lanesIdle() {
+        for (Lane lane : lanes.values()) {
+            if (lane.busy()) return false;
+        }
+        return true;
+    }
+
+    // Plays one game's events strictly in order, at most one task per game at a time
+    private final class Lane implements Runnable {
+        private final String gameId;
+        private final Game game;
+        private final ArrayDeque<MoveEvent> events = new ArrayDeque<>();
+        private boolean scheduled = false;
+
+        Lane(String gameId) {
+            this.gameId = gameId;
+            this.game = newGame.apply(gameId);
+        }
+
+        synchronized boolean busy() {
+            return scheduled;
+        }
+
+        void offer(MoveEvent event) {
+            boolean schedule;
+            synchronized (this) {
+                events.add(event);
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < LANE_BATCH; i++) {
+                MoveEvent event;
+                synchronized (this) {
+                    event = events.poll();
+                    if (event == null) {
+                        scheduled = false;
+                        break;
+                    }
+                }
+                ReturnPlay result;
+                int plies = game.getPlyCount();
+                try {
+                    result = game.play(event.move);
+                } catch (RuntimeException e) {
+                    error = e;
+                    upstreamDone = true;
+                    cancelUpstream();
+                    synchronized (this) {
+                        events.clear();
+                        scheduled = false;
+                    }
+                    break;
+                }
+                String san = game.getPlyCount() != plies ? game.getLastMoveSan() : null;
+                ready.add(new MoveResult(gameId, event.move, result, san));
+                drain();
+            }
+            boolean more;
+            synchronized (this) {
+                more = scheduled;
+            }
+            if (more) {
+                // Batch used up with events left: requeue so other games get the thread
+                executor.execute(this);
+            }
+            drain();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package chess;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Move notation: reading coordinate ("e2 e4", "e7 e8 Q"), UCI ("e2e4", "e7e8q") and SAN
+ * ("Nf3", "exd5", "O-O", "e8=Q+") input, and writing UCI and SAN output.
+ *
+ * Parsing works in place on a {@link CharSequence} or the bytes of a {@link ByteBuffer} and
+ * allocates nothing; it yields a move packed as in {@link GameRecord#pack} (from square in
+ * bits 0-5, to square in bits 6-11, promotion code in bits 12-14), or {@link #NONE}.
+ * Coordinate and UCI input is only checked for form; SAN is resolved against the legal moves
+ * of the game's position and fails if it matches none or more than one.
+ */
+public final class Notation {
+    public static final int NONE = -1;
+
+    private static final String SAN_PIECES = "NBRQK";
+
+    private Notation() { }
+
+    /** Parse a move for the game's current position. */
+    public static int parse(CharSequence text, Game game) {
+        return parse(text, 0, text.length(), game);
+    }
+
+    /** Parse the ASCII bytes between the buffer's position and limit, without moving either. */
+    public static int parse(ByteBuffer bytes, Game game) {
+        return parseRange(bytes, bytes.position(), bytes.limit(), game);
+    }
+
+    // The characters in [start, end) of the text
+    static int parse(CharSequence text, int start, int end, Game game) {
+        return parseRange(text, start, end, game);
+    }
+
+    static int from(int move) {
+        return move & 63;
+    }
+
+    static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    static int promotionCode(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    static int pack(int from, int to, int promotionCode) {
+        return from | (to << 6) | (promotionCode << 12);
+    }
+
+    /** UCI text of a packed move, e.g. "e2e4" or "e7e8q". */
+    public static String toUci(int move) {
+        StringBuilder sb = new StringBuilder(5);
+        appendSquare(sb, from(move));
+        appendSquare(sb, to(move));
+        int code = promotionCode(move);
+        if (code != 0) {
+            sb.append(Character.toLowerCase(GameRecord.PROMOTIONS[code].charAt(0)));
+        }
+        return sb.toString();
+    }
+
+    /** Text of a packed move in the form {@link Game#play} has always accepted, e.g. "e7 e8 Q". */
+    public static String toCoordinate(int move) {
+        StringBuilder sb = new StringBuilder(7);
+        appendSquare(sb, from(move));
+        sb.append(' ');
+        appendSquare(sb, to(move));
+        int code = promotionCode(move);
+        if (code != 0) {
+            sb.append(' ').append(GameRecord.PROMOTIONS[code]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * SAN of a legal move in the game's current position, without the check or mate suffix
+     * (those depend on the position after the move). Adds the file, rank or both when another
+     * piece of the same kind could also legally reach the target square.
+     */
+    static String sanBody(Game game, int move) {
+        Board board = game.getBoard();
+        int from = from(move);
+        int to = to(move);
+        int ff = from & 7, fr = from >>> 3, tf = to & 7, tr = to >>> 3;
+        Piece piece = board.getPiece(ff, fr);
+        StringBuilder sb = new StringBuilder(8);
+        if (piece instanceof King && Math.abs(tf - ff) == 2) {
+            return tf > ff ? "O-O" : "O-O-O";
+        }
+        boolean capture = board.getPiece(tf, tr) != null;
+        if (piece instanceof Pawn) {
+            if (ff != tf) {
+                sb.append((char) ('a' + ff)).append('x'); // en passant included
+            }
+            appendSquare(sb, to);
+            if (((Pawn) piece).canPromote(tr)) {
+                int code = promotionCode(move);
+                sb.append('=').append(GameRecord.PROMOTIONS[code == 0 ? 1 : code]);
+            }
+            return sb.toString();
+        }
+        sb.append(piece.getType());
+        boolean sameFile = false, sameRank = false, ambiguous = false;
+        for (int f = 0; f < 8; f++) {
+            for (int r = 0; r < 8; r++) {
+                if (f == ff && r == fr) continue;
+                Piece other = board.getPiece(f, r);
+                if (other == null || other.getColor() != piece.getColor() || !other.getType().equals(piece.getType())) continue;
+                if (!game.isLegal(f, r, tf, tr)) continue;
+                ambiguous = true;
+                sameFile |= f == ff;
+                sameRank |= r == fr;
+            }
+        }
+        if (ambiguous) {
+            if (!sameFile) {
+                sb.append((char) ('a' + ff));
+            } else if (!sameRank) {
+                sb.append((char) ('1' + fr));
+            } else {
+                appendSquare(sb, from);
+            }
+        }
+        if (capture) sb.append('x');
+        appendSquare(sb, to);
+        return sb.toString();
+    }
+
+    private static void appendSquare(StringBuilder sb, int square) {
+        sb.append((char) ('a' + (square & 7))).append((char) ('1' + (square >>> 3)));
+    }
+
+    // Shared by the CharSequence and ByteBuffer entry points
+    private static char charAt(Object src, int i) {
+        return (src instanceof CharSequence)
+                ? ((CharSequence) src).charAt(i)
+                : (char) (((ByteBuffer) src).get(i) & 0xFF);
+    }
+
+    private static int parseRange(Object src, int start, int end, Game game) {
+        while (start < end && Character.isWhitespace(charAt(src, start))) start++;
+        while (end > start && Character.isWhitespace(charAt(src, end - 1))) end--;
+        if (end - start < 2) return NONE;
+
+        int from = square(src, start, end);
+        if (from >= 0 && end - start >= 4) {
+            // Coordinate: "e2 e4 [Q]" (anything after the promotion token is ignored)
+            int i = start + 2;
+            if (Character.isWhitespace(charAt(src, i))) {
+                while (i < end && Character.isWhitespace(charAt(src, i))) i++;
+                int to = square(src, i, end);
+                if (to < 0 || (i + 2 < end && !Character.isWhitespace(charAt(src, i + 2)))) return NONE;
+                i += 2;
+                while (i < end && Character.isWhitespace(charAt(src, i))) i++;
+                int tokenEnd = i;
+                while (tokenEnd < end && !Character.isWhitespace(charAt(src, tokenEnd))) tokenEnd++;
+                int code = (tokenEnd - i == 1) ? promotionCode(charAt(src, i)) : 0;
+                return pack(from, to, promotion(game, from, to, code));
+            }
+            // UCI: "e2e4", "e7e8q"
+            int to = square(src, start + 2, end);
+            if (to >= 0 && (end - start == 4 || end - start == 5)) {
+                int code = (end - start == 5) ? promotionCode(charAt(src, start + 4)) : 0;
+                if (end - start == 5 && code == 0) return NONE;
+                return pack(from, to, promotion(game, from, to, code));
+            }
+        }
+        return parseSan(src, start, end, game);
+    }
+
+    private static int parseSan(Object src, int start, int end, Game game) {
+        if (game == null) return NONE;
+        while (end > start && "+#!?".indexOf(charAt(src, end - 1)) >= 0) end--;
+        Board board = game.getBoard();
+        int homeRank = board.getSideToMove() == Piece.Color.WHITE ? 0 : 56;
+        if (isCastling(src, start, end, 5)) {
+            return legalOrNone(game, pack(homeRank + 4, homeRank + 2, 0));
+        }
+        if (isCastling(src, start, end, 3)) {
+            return legalOrNone(game, pack(homeRank + 4, homeRank + 6, 0));
+        }
+
+        int code = 0;
+        if (end - start >= 2 && promotionCode(charAt(src, end - 1)) != 0) {
+            code = promotionCode(charAt(src, end - 1));
+            end--;
+            if (end > start && charAt(src, end - 1) == '=') end--;
+        }
+        if (end - start < 2) return NONE;
+        int to = square(src, end - 2, end);
+        if (to < 0) return NONE;
+
+        char type = 'P';
+        int i = start;
+        int pieceIndex = SAN_PIECES.indexOf(charAt(src, i));
+        if (pieceIndex >= 0) {
+            type = SAN_PIECES.charAt(pieceIndex);
+            i++;
+        }
+        // Optional disambiguation and capture mark between piece and target
+        int fileHint = -1, rankHint = -1;
+        for (; i < end - 2; i++) {
+            char c = charAt(src, i);
+            if (c >= 'a' && c <= 'h') fileHint = c - 'a';
+            else if (c >= '1' && c <= '8') rankHint = c - '1';
+            else if (c != 'x' && c != ':') return NONE;
+        }
+
+        int match = NONE;
+        Piece.Color color = board.getSideToMove();
+        boolean pawn = type == 'P';
+        for (int f = 0; f < 8; f++) {
+            if (fileHint >= 0 && f != fileHint) continue;
+            if (pawn && fileHint < 0 && f != (to & 7)) continue; // "d5" is never a capture
+            for (int r = 0; r < 8; r++) {
+                if (rankHint >= 0 && r != rankHint) continue;
+                Piece p = board.getPiece(f, r);
+                if (p == null || p.getColor() != color || p.getType().charAt(0) != type) continue;
+                if (!game.isLegal(f, r, to & 7, to >>> 3)) continue;
+                if (match != NONE) return NONE; // ambiguous
+                match = pack(r * 8 + f, to, code);
+            }
+        }
+        if (match != NONE && pawn && ((to >>> 3) == 0 || (to >>> 3) == 7) && code == 0) {
+            match |= 1 << 12; // promotion without a piece defaults to a queen
+        }
+        return match;
+    }
+
+    // Only a pawn reaching the last rank keeps a promotion code, and it promotes to a queen by default
+    private static int promotion(Game game, int from, int to, int code) {
+        if (game == null) return code;
+        int rank = to >>> 3;
+        Piece p = game.getBoard().getPiece(from & 7, from >>> 3);
+        if (!(p instanceof Pawn) || (rank != 0 && rank != 7)) return 0;
+        return code == 0 ? 1 : code;
+    }
+
+    private static boolean isCastling(Object src, int start, int end, int length) {
+        if (end - start != length) return false;
+        for (int i = 0; i < length; i++) {
+            char c = charAt(src, start + i);
+            if ((i % 2 == 0) ? (c != 'O' && c != '0') : c != '-') return false;
+        }
+        return true;
+    }
+
+    private static int legalOrNone(Game game, int move) {
+        int from = from(move);
+        int to = to(move);
+        return game.isLegal(from & 7, from >>> 3, to & 7, to >>> 3) ? move : NONE;
+    }
+
+    // Square index for the two characters at i, or -1
+    private static int square(Object src, int i, int end) {
+        if (i + 2 > end) return -1;
+        int file = charAt(src, i) - 'a';
+        int rank = charAt(src, i + 1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) return -1;
+        return rank * 8 + file;
+    }
+
+    private static int promotionCode(char c) {
+        switch (Character.toUpperCase(c)) {
+            case 'Q': return 1;
+            case 'R': return 2;
+            case 'B': return 3;
+            case 'N': return 4;
+            default: return 0;
+        }
+    }
+}
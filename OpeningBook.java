@@ -0,0 +1,278 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Opening book keyed by {@link Zobrist} position hash.
+ *
+ * The file holds a small header followed by 16-byte entries sorted by key then move:
+ * key (8 bytes), packed move as in {@link GameRecord} (2), verdict flags (1), padding (1)
+ * and the number of games that played the move (4). At runtime it is memory-mapped and
+ * binary-searched, so a hit tells {@link Chess#play} the move is legal and whether it
+ * gives check, mate or stalemate without generating any moves.
+ */
+public class OpeningBook implements Closeable {
+    static final int FLAG_CHECK = 1;
+    static final int FLAG_CHECKMATE = 2;
+    static final int FLAG_STALEMATE = 4;
+
+    private static final byte[] MAGIC = { 'C', 'H', 'O', 'B' };
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer entries;
+    private final int size;
+
+    public OpeningBook(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        boolean valid = mapped.limit() >= HEADER_BYTES;
+        if (valid) {
+            for (byte b : MAGIC) {
+                valid &= mapped.get() == b;
+            }
+            valid &= mapped.get() == VERSION;
+        }
+        int count = valid ? mapped.getInt(8) : 0;
+        if (!valid || (long) HEADER_BYTES + (long) count * ENTRY_BYTES != mapped.limit()) {
+            channel.close();
+            throw new IOException("Not a version " + VERSION + " opening book: " + file);
+        }
+        mapped.position(HEADER_BYTES);
+        entries = mapped.slice();
+        size = count;
+    }
+
+    /** A book move from some position, with how often it was played and what it leads to. */
+    public static final class Continuation {
+        private final short move;
+        private final int flags;
+        private final int games;
+
+        Continuation(short move, int flags, int games) {
+            this.move = move;
+            this.flags = flags;
+            this.games = games;
+        }
+
+        /** Move text as accepted by {@link Chess#play}, e.g. "e2 e4". */
+        public String getMove() {
+            int from = GameRecord.fromSquare(move);
+            int to = GameRecord.toSquare(move);
+            String promotion = GameRecord.promotion(move);
+            return square(from) + " " + square(to) + (promotion.isEmpty() ? "" : " " + promotion);
+        }
+
+        public int getGames() {
+            return games;
+        }
+
+        public boolean givesCheck() {
+            return (flags & FLAG_CHECK) != 0;
+        }
+
+        public boolean isCheckmate() {
+            return (flags & FLAG_CHECKMATE) != 0;
+        }
+
+        public boolean isStalemate() {
+            return (flags & FLAG_STALEMATE) != 0;
+        }
+
+        @Override
+        public String toString() {
+            return getMove() + " x" + games;
+        }
+
+        private static String square(int sq) {
+            return "" + (char) ('a' + (sq & 7)) + (char) ('1' + (sq >>> 3));
+        }
+    }
+
+    /** Book moves for the board's position, most played first. */
+    public List<Continuation> continuations(Board board) {
+        long key = Zobrist.hash(board);
+        List<Continuation> result = new ArrayList<>();
+        for (int i = firstEntry(key); i < size && keyAt(i) == key; i++) {
+            int offset = i * ENTRY_BYTES;
+            result.add(new Continuation(entries.getShort(offset + 8), entries.get(offset + 10),
+                    entries.getInt(offset + 12)));
+        }
+        result.sort((a, b) -> Integer.compare(b.games, a.games));
+        return result;
+    }
+
+    /** Verdict flags of a book move, or -1 if the move is not in the book for this key. */
+    int flags(long key, short move) {
+        for (int i = firstEntry(key); i < size && keyAt(i) == key; i++) {
+            if (entries.getShort(i * ENTRY_BYTES + 8) == move) {
+                return entries.get(i * ENTRY_BYTES + 10);
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Lower bound: index of the first entry whose key is >= key (keys compare signed)
+    private int firstEntry(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keyAt(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long keyAt(int index) {
+        return entries.getLong(index * ENTRY_BYTES);
+    }
+
+    /**
+     * Build a book from a PGN file, keeping the first {@code maxPlies} plies of every game.
+     * Games are replayed through {@link Game}, so the book only ever holds legal moves.
+     */
+    public static int build(Path pgn, Path out, int maxPlies) throws IOException {
+        Map<BookKey, int[]> counts = new HashMap<>(); // {games, flags}
+        try (BufferedReader reader = Files.newBufferedReader(pgn, StandardCharsets.ISO_8859_1)) {
+            List<String> sans;
+            while ((sans = readGame(reader)) != null) {
+                Game game = new Game();
+                for (int ply = 0; ply < Math.min(maxPlies, sans.size()); ply++) {
+                    long key = Zobrist.hash(game.getBoard());
+                    int move = Notation.parse(sans.get(ply), game);
+                    if (move == Notation.NONE) break; // unknown or illegal move: keep what we have of this game
+                    ReturnPlay result = game.play(Notation.toUci(move));
+                    if (result.message == ReturnPlay.Message.ILLEGAL_MOVE) break;
+                    short packed = (short) move;
+                    int[] entry = counts.computeIfAbsent(new BookKey(key, packed), k -> new int[2]);
+                    entry[0]++;
+                    entry[1] = verdict(result.message);
+                    if (result.message != null && result.message != ReturnPlay.Message.CHECK) break;
+                }
+            }
+        }
+        List<BookKey> keys = new ArrayList<>(counts.keySet());
+        keys.sort((a, b) -> a.key != b.key ? Long.compare(a.key, b.key) : Short.compare(a.move, b.move));
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + keys.size() * ENTRY_BYTES);
+        buffer.put(MAGIC).put(VERSION).put(new byte[3]).putInt(keys.size()).putInt(0);
+        for (BookKey k : keys) {
+            int[] entry = counts.get(k);
+            buffer.putLong(k.key).putShort(k.move).put((byte) entry[1]).put((byte) 0).putInt(entry[0]);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        return keys.size();
+    }
+
+    private static int verdict(ReturnPlay.Message message) {
+        if (message == ReturnPlay.Message.CHECK) return FLAG_CHECK;
+        if (message == ReturnPlay.Message.CHECKMATE_BLACK_WINS
+                || message == ReturnPlay.Message.CHECKMATE_WHITE_WINS) return FLAG_CHECK | FLAG_CHECKMATE;
+        if (message == ReturnPlay.Message.STALEMATE) return FLAG_STALEMATE;
+        return 0;
+    }
+
+    // Move tokens of the next game, with tags, comments, variations, move numbers and results removed
+    private static List<String> readGame(BufferedReader reader) throws IOException {
+        List<String> moves = new ArrayList<>();
+        boolean inMoves = false;
+        int comment = 0;   // nesting of {...} and (...)
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String trimmed = line.trim();
+            if (comment == 0 && trimmed.startsWith("[")) {
+                if (inMoves) {
+                    // a new game's tags started without a result token
+                    reader.reset();
+                    return moves;
+                }
+                continue;
+            }
+            for (String token : trimmed.split("\\s+")) {
+                if (token.isEmpty()) continue;
+                StringBuilder clean = new StringBuilder();
+                for (char c : token.toCharArray()) {
+                    if (c == '{' || c == '(') comment++;
+                    else if (c == '}' || c == ')') comment = Math.max(0, comment - 1);
+                    else if (comment == 0) clean.append(c);
+                }
+                String t = clean.toString();
+                if (t.startsWith(";")) break;
+                if (t.equals("1-0") || t.equals("0-1") || t.equals("1/2-1/2") || t.equals("*")) {
+                    return moves;
+                }
+                t = t.replaceFirst("^\\d+\\.+", "");
+                if (t.isEmpty() || t.startsWith("$")) continue;
+                inMoves = true;
+                moves.add(t);
+            }
+            reader.mark(1 << 16);
+        }
+        return moves.isEmpty() ? null : moves;
+    }
+
+    private static final class BookKey {
+        final long key;
+        final short move;
+
+        BookKey(long key, short move) {
+            this.key = key;
+            this.move = move;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BookKey && ((BookKey) o).key == key && ((BookKey) o).move == move;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, move);
+        }
+    }
+
+    /** Builds a book offline: {@code java chess.OpeningBook <games.pgn> <book.bin> [maxPlies]}. */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: java chess.OpeningBook <games.pgn> <book.bin> [maxPlies]");
+            return;
+        }
+        int maxPlies = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int entries = build(Paths.get(args[0]), Paths.get(args[1]), maxPlies);
+        System.out.println(entries + " book entries written to " + args[1]);
+    }
+}
@@ -0,0 +1,76 @@
+package chess;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size encoding of a position in {@value #BYTES} bytes: 32 bytes of 4-bit piece
+ * codes (square rank*8+file, low nibble first), one byte of side to move and castling
+ * rights, and the en passant square (0xFF for none).
+ */
+final class PackedPosition {
+    static final int BYTES = 34;
+
+    private static final String TYPES = "PNBRQK"; // codes 1..6, black adds 8
+    private static final int BLACK_TO_MOVE = 1; // castling mask in the bits above
+    private static final int NO_SQUARE = 0xFF;
+
+    private PackedPosition() { }
+
+    static byte[] pack(Board board) {
+        byte[] bytes = new byte[BYTES];
+        pack(board, ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    /** Write the position at the buffer's position and advance it by {@value #BYTES}. */
+    static void pack(Board board, ByteBuffer out) {
+        for (int sq = 0; sq < 64; sq += 2) {
+            out.put((byte) (code(board.getPiece(sq & 7, sq >>> 3))
+                    | code(board.getPiece((sq + 1) & 7, (sq + 1) >>> 3)) << 4));
+        }
+        int flags = board.getCastlingMask() << 1;
+        if (board.getSideToMove() == Piece.Color.BLACK) flags |= BLACK_TO_MOVE;
+        out.put((byte) flags);
+        int ep = board.getEnPassantSquare();
+        out.put((byte) (ep == Board.NO_SQUARE ? NO_SQUARE : ep));
+    }
+
+    static Board unpack(byte[] bytes) {
+        return unpack(ByteBuffer.wrap(bytes));
+    }
+
+    /** Read a position at the buffer's position and advance it by {@value #BYTES}. */
+    static Board unpack(ByteBuffer in) {
+        Board board = new Board();
+        for (int sq = 0; sq < 64; sq += 2) {
+            int pair = in.get() & 0xFF;
+            board.setPiece(sq & 7, sq >>> 3, piece(pair & 0xF));
+            board.setPiece((sq + 1) & 7, (sq + 1) >>> 3, piece(pair >>> 4));
+        }
+        int flags = in.get();
+        int ep = in.get() & 0xFF;
+        board.setSideToMove((flags & BLACK_TO_MOVE) != 0 ? Piece.Color.BLACK : Piece.Color.WHITE);
+        board.setEnPassantSquare(ep == NO_SQUARE ? Board.NO_SQUARE : ep);
+        board.setCastlingMask((flags >>> 1) & Board.ALL_CASTLING);
+        return board;
+    }
+
+    private static int code(Piece p) {
+        if (p == null) return 0;
+        int type = TYPES.indexOf(p.getType()) + 1;
+        return p.getColor() == Piece.Color.WHITE ? type : type + 8;
+    }
+
+    static Piece piece(int code) {
+        if (code == 0) return null;
+        Piece.Color color = (code & 8) == 0 ? Piece.Color.WHITE : Piece.Color.BLACK;
+        switch (code & 7) {
+            case 1: return new Pawn(color);
+            case 2: return new Knight(color);
+            case 3: return new Bishop(color);
+            case 4: return new Rook(color);
+            case 5: return new Queen(color);
+            default: return new King(color);
+        }
+    }
+}
@@ -37,14 +37,13 @@ public class Pawn extends Piece {
             return true;
         }
         // En passant capture
-        String epTarget = board.getEnPassantTarget();
-        if (epTarget != null) {
-            int[] epPos = board.parsePosition(epTarget);
-            if (epPos != null && epPos[0] == endFile && epPos[1] == endRank) {
-                return true;
-            }
-        }
-        return false;
+        return board.getEnPassantSquare() == endRank * 8 + endFile;
+    }
+
+    @Override
+    public long attacks(int file, int rank, long occupied) {
+        int direction = (color == Color.WHITE) ? 1 : -1;
+        return LegalityChecker.bit(file - 1, rank + direction) | LegalityChecker.bit(file + 1, rank + direction);
     }
 
     public boolean canPromote(int endRank) {
@@ -19,6 +19,14 @@ public abstract class Piece {
                                        int endFile, int endRank,
                                        Board board);
 
+    /**
+     * Squares this piece attacks from (file, rank) as a bit mask indexed rank * 8 + file.
+     * Pure geometry: sliders stop at the first occupied square in {@code occupied}, pawns
+     * attack only diagonally, and neither the colour of the target nor the safety of the
+     * king is considered, so attack queries never recurse into move validation.
+     */
+    public abstract long attacks(int file, int rank, long occupied);
+
     public Color getColor() {
         return color;
     }
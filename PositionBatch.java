@@ -0,0 +1,349 @@
+package chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * Evaluates many positions at once for offline analysis: attacked squares, material and
+ * mobility of each side (java chess.PositionBatch [positions] [rounds] [seed]).
+ *
+ * Positions are stored structure-of-arrays, one array of bitboards per piece kind with one lane
+ * per position, and every piece kind is handled set-wise: all rooks of a position slide in one
+ * go with Kogge-Stone fills, all knights jump with a handful of masked shifts. The movement
+ * rules match {@link Piece#attacks}, which the main method checks position by position.
+ *
+ * When jdk.incubator.vector is resolved (java --add-modules jdk.incubator.vector) and
+ * {@code VectorKernel} is on the class path, the batch runs on CPU vector lanes, several
+ * positions per instruction; otherwise, or with -Dchess.batch.scalar=true, it runs the same
+ * passes one position at a time.
+ */
+public final class PositionBatch {
+    // Piece kinds in PackedPosition order; black kinds follow the white ones
+    static final int PAWN = 0, KNIGHT = 1, BISHOP = 2, ROOK = 3, QUEEN = 4, KING = 5;
+    static final int KINDS = 6;
+    private static final String TYPES = "PNBRQK";
+    static final int[] VALUES = { 100, 300, 300, 500, 900, 0 }; // centipawns, as in Search
+
+    static final long FILE_A = 0x0101010101010101L;
+    static final long FILE_H = FILE_A << 7;
+    static final long FILE_AB = FILE_A | FILE_A << 1;
+    static final long FILE_GH = FILE_H | FILE_H >>> 1;
+    static final long RANK_1 = 0xFFL;
+    static final long RANK_8 = RANK_1 << 56;
+
+    // Rotation and landing mask of each ray direction: N, S, E, W, then NE, NW, SE, SW
+    static final int[] ROTATIONS = { 8, 56, 1, 63, 9, 7, 57, 55 };
+    static final long[] LANDING = {
+        ~RANK_1, ~RANK_8, ~FILE_A, ~FILE_H,
+        ~(RANK_1 | FILE_A), ~(RANK_1 | FILE_H), ~(RANK_8 | FILE_A), ~(RANK_8 | FILE_H),
+    };
+
+    /** Computes the results of positions {@code from} (inclusive) to {@code to} (exclusive). */
+    interface Kernel {
+        void evaluate(PositionBatch batch, int from, int to);
+    }
+
+    private static final int WARMUP_ROUNDS = 3; // untimed rounds before each measurement in main
+    static final Kernel SCALAR = PositionBatch::evaluateScalar;
+    private static final Kernel KERNEL = loadKernel();
+
+    private final int capacity;
+    final long[][] pieces = new long[2 * KINDS][];
+    final long[] whiteAttacks;
+    final long[] blackAttacks;
+    final int[] material;
+    final int[] whiteMobility;
+    final int[] blackMobility;
+    private final Board scratch = new Board();
+    private int size;
+
+    public PositionBatch(int capacity) {
+        this.capacity = capacity;
+        for (int k = 0; k < pieces.length; k++) {
+            pieces[k] = new long[capacity];
+        }
+        this.whiteAttacks = new long[capacity];
+        this.blackAttacks = new long[capacity];
+        this.material = new int[capacity];
+        this.whiteMobility = new int[capacity];
+        this.blackMobility = new int[capacity];
+    }
+
+    // The vector kernel is compiled apart, and only links when the incubator module is resolved
+    private static Kernel loadKernel() {
+        if (Boolean.getBoolean("chess.batch.scalar")
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (Kernel) Class.forName("chess.VectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    /** Whether batches run on CPU vector lanes rather than one position at a time. */
+    public static boolean isVectorized() {
+        return KERNEL != SCALAR;
+    }
+
+    /** Add a position and return its index in the batch. */
+    public int add(Board board) {
+        if (size == capacity) {
+            throw new IllegalStateException("Batch is full (" + capacity + " positions)");
+        }
+        int lane = size++;
+        for (long[] kind : pieces) {
+            kind[lane] = 0L;
+        }
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece p = board.getPiece(file, rank);
+                if (p == null) continue;
+                int kind = TYPES.indexOf(p.getType()) + (p.getColor() == Piece.Color.WHITE ? 0 : KINDS);
+                pieces[kind][lane] |= 1L << (rank * 8 + file);
+            }
+        }
+        return lane;
+    }
+
+    /** Parse a FEN into the batch and return its index. */
+    public int add(String fen) {
+        Fen.parseInto(fen, scratch);
+        return add(scratch);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Compute attacks, material and mobility of every position added so far. */
+    public void evaluate() {
+        evaluate(0, size);
+    }
+
+    /** Compute the results of positions {@code from} (inclusive) to {@code to} (exclusive). */
+    public void evaluate(int from, int to) {
+        KERNEL.evaluate(this, from, to);
+    }
+
+    // Each pass is a straight-line loop over the lanes with no per-piece branching
+    private static void evaluateScalar(PositionBatch b, int from, int to) {
+        long[][] pieces = b.pieces;
+        long[] wp = pieces[PAWN], bp = pieces[KINDS + PAWN];
+        for (int i = from; i < to; i++) {
+            b.whiteAttacks[i] = (wp[i] << 9 & ~FILE_A) | (wp[i] << 7 & ~FILE_H);
+            b.blackAttacks[i] = (bp[i] >>> 7 & ~FILE_A) | (bp[i] >>> 9 & ~FILE_H);
+        }
+        for (int i = from; i < to; i++) {
+            b.whiteAttacks[i] |= leapers(pieces[KNIGHT][i], pieces[KING][i]);
+            b.blackAttacks[i] |= leapers(pieces[KINDS + KNIGHT][i], pieces[KINDS + KING][i]);
+        }
+        sliders(b, from, to);
+
+        for (int i = from; i < to; i++) {
+            long white = 0L, black = 0L;
+            int score = 0;
+            for (int k = 0; k < KINDS; k++) {
+                white |= pieces[k][i];
+                black |= pieces[KINDS + k][i];
+                score += VALUES[k] * (Long.bitCount(pieces[k][i]) - Long.bitCount(pieces[KINDS + k][i]));
+            }
+            b.material[i] = score;
+            b.whiteMobility[i] = Long.bitCount(b.whiteAttacks[i] & ~white);
+            b.blackMobility[i] = Long.bitCount(b.blackAttacks[i] & ~black);
+        }
+    }
+
+    private static long leapers(long n, long k) {
+        long east = k << 1 & ~FILE_A, west = k >>> 1 & ~FILE_H;
+        long row = k | east | west;
+        return (n << 17 & ~FILE_A) | (n << 15 & ~FILE_H) | (n << 10 & ~FILE_AB) | (n << 6 & ~FILE_GH)
+                | (n >>> 15 & ~FILE_A) | (n >>> 17 & ~FILE_H) | (n >>> 6 & ~FILE_AB) | (n >>> 10 & ~FILE_GH)
+                | east | west | row << 8 | row >>> 8;
+    }
+
+    // Queens slide with both rooks and bishops, and both colours share the occupancy
+    private static void sliders(PositionBatch b, int from, int to) {
+        long[][] pieces = b.pieces;
+        long[] straightWhite = new long[to - from], straightBlack = new long[to - from];
+        long[] diagonalWhite = new long[to - from], diagonalBlack = new long[to - from];
+        long[] empty = new long[to - from];
+        for (int i = from; i < to; i++) {
+            long occupied = 0L;
+            for (long[] kind : pieces) {
+                occupied |= kind[i];
+            }
+            int j = i - from;
+            empty[j] = ~occupied;
+            straightWhite[j] = pieces[ROOK][i] | pieces[QUEEN][i];
+            straightBlack[j] = pieces[KINDS + ROOK][i] | pieces[KINDS + QUEEN][i];
+            diagonalWhite[j] = pieces[BISHOP][i] | pieces[QUEEN][i];
+            diagonalBlack[j] = pieces[KINDS + BISHOP][i] | pieces[KINDS + QUEEN][i];
+        }
+        for (int d = 0; d < ROTATIONS.length; d++) {
+            long[] white = d < 4 ? straightWhite : diagonalWhite;
+            long[] black = d < 4 ? straightBlack : diagonalBlack;
+            int r = ROTATIONS[d];
+            long mask = LANDING[d];
+            for (int j = 0; j < empty.length; j++) {
+                b.whiteAttacks[from + j] |= slide(white[j], empty[j], r, mask);
+                b.blackAttacks[from + j] |= slide(black[j], empty[j], r, mask);
+            }
+        }
+    }
+
+    /*
+     * One ray direction: a step is a rotation by r followed by a mask of the squares a step can
+     * land on, so the rotation's wrap-around never counts. Filling 1, 2, then 4 steps at a time
+     * covers the longest ray, and the blocker itself stays attacked.
+     */
+    private static long slide(long gen, long empty, int r, long mask) {
+        empty &= mask;
+        gen |= empty & Long.rotateLeft(gen, r);
+        empty &= Long.rotateLeft(empty, r);
+        gen |= empty & Long.rotateLeft(gen, 2 * r);
+        empty &= Long.rotateLeft(empty, 2 * r);
+        gen |= empty & Long.rotateLeft(gen, 4 * r);
+        return Long.rotateLeft(gen, r) & mask;
+    }
+
+    /** Squares the given side attacks, as a mask indexed rank * 8 + file. */
+    public long getAttacks(int index, Piece.Color color) {
+        check(index);
+        return color == Piece.Color.WHITE ? whiteAttacks[index] : blackAttacks[index];
+    }
+
+    /** White material minus black material in centipawns. */
+    public int getMaterial(int index) {
+        check(index);
+        return material[index];
+    }
+
+    /** Squares the given side attacks that are not occupied by its own pieces. */
+    public int getMobility(int index, Piece.Color color) {
+        check(index);
+        return color == Piece.Color.WHITE ? whiteMobility[index] : blackMobility[index];
+    }
+
+    private void check(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Position " + index + " of " + size);
+        }
+    }
+
+    // Same answers one piece at a time through Piece.attacks, for checking and comparison
+    static long attacksOf(Board board, Piece.Color color) {
+        long occupied = board.occupancy();
+        long attacks = 0L;
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece p = board.getPiece(file, rank);
+                if (p != null && p.getColor() == color) {
+                    attacks |= p.attacks(file, rank, occupied);
+                }
+            }
+        }
+        return attacks;
+    }
+
+    private static long piecesOf(Board board, Piece.Color color) {
+        long own = 0L;
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece p = board.getPiece(file, rank);
+                if (p != null && p.getColor() == color) {
+                    own |= 1L << (rank * 8 + file);
+                }
+            }
+        }
+        return own;
+    }
+
+    // Positions whose results differ from the per-piece reference, printing the first few
+    private static int mismatches(PositionBatch batch, Board[] boards, String kernel) {
+        int mismatches = 0;
+        for (int i = 0; i < boards.length; i++) {
+            Board b = boards[i];
+            int material = Search.evaluate(b) * (b.getSideToMove() == Piece.Color.WHITE ? 1 : -1);
+            boolean same = batch.getMaterial(i) == material;
+            for (Piece.Color color : Piece.Color.values()) {
+                long attacks = attacksOf(b, color);
+                same &= batch.getAttacks(i, color) == attacks
+                        && batch.getMobility(i, color) == Long.bitCount(attacks & ~piecesOf(b, color));
+            }
+            if (!same && mismatches++ < 5) {
+                System.out.println(kernel + " mismatch in " + Fen.toFen(b));
+            }
+        }
+        return mismatches;
+    }
+
+    // Positions per second over the given number of rounds of the whole batch, after a warm-up
+    private static double time(PositionBatch batch, Kernel kernel, int rounds) {
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            kernel.evaluate(batch, 0, batch.size());
+        }
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            kernel.evaluate(batch, 0, batch.size());
+        }
+        return (double) batch.size() * rounds * 1e9 / (System.nanoTime() - start);
+    }
+
+    public static void main(String[] args) {
+        int positions = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+
+        // Positions reached by random play, restarting whenever a game ends
+        SplittableRandom random = new SplittableRandom(seed);
+        Board[] boards = new Board[positions];
+        PositionBatch batch = new PositionBatch(positions);
+        int[] moves = new int[Game.MAX_MOVES];
+        Game game = new Game();
+        for (int i = 0; i < positions; i++) {
+            int count = game.legalMoves(moves);
+            if (count == 0 || game.isOver() || game.getPlyCount() >= 200) {
+                game = new Game();
+                count = game.legalMoves(moves);
+            }
+            game.play(Notation.toCoordinate(moves[random.nextInt(count)]));
+            boards[i] = new Board(game.getBoard());
+            batch.add(boards[i]);
+        }
+
+        SCALAR.evaluate(batch, 0, positions);
+        int mismatches = mismatches(batch, boards, "scalar");
+        if (isVectorized()) {
+            KERNEL.evaluate(batch, 0, positions);
+            mismatches += mismatches(batch, boards, "vector");
+        }
+
+        long sink = 0;
+        long start = 0;
+        for (int r = -WARMUP_ROUNDS; r < rounds; r++) {
+            if (r == 0) start = System.nanoTime();
+            for (Board b : boards) {
+                sink += attacksOf(b, Piece.Color.WHITE) ^ attacksOf(b, Piece.Color.BLACK) + Search.evaluate(b);
+            }
+        }
+        double perPiece = (double) positions * rounds * 1e9 / (System.nanoTime() - start);
+        double scalar = time(batch, SCALAR, rounds);
+        System.out.printf("positions=%d mismatches=%d per-piece=%.0f/s scalar batch=%.0f/s (%.1fx)",
+                positions, mismatches, perPiece, scalar, scalar / perPiece);
+        if (isVectorized()) {
+            double vector = time(batch, KERNEL, rounds);
+            System.out.printf(" vector batch=%.0f/s (%.1fx)", vector, vector / perPiece);
+        } else {
+            System.out.print(" vector batch unavailable");
+        }
+        System.out.printf(" [%d]%n", sink & 1);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -19,4 +19,10 @@ public class Queen extends Piece {
         Piece destPiece = board.getPiece(endFile, endRank);
         return destPiece == null || destPiece.getColor() != color;
     }
+
+    @Override
+    public long attacks(int file, int rank, long occupied) {
+        return LegalityChecker.rays(file, rank, LegalityChecker.ROOK_DIRECTIONS, occupied)
+                | LegalityChecker.rays(file, rank, LegalityChecker.BISHOP_DIRECTIONS, occupied);
+    }
 }
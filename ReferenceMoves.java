@@ -0,0 +1,242 @@
+package chess;
+
+/**
+ * Brute-force legal move generator that shares no code with the Piece classes or
+ * {@link LegalityChecker}, used by {@link Tournament} to cross-check {@link Game}.
+ *
+ * It works on a plain 64-square array (codes 1-6 for PNBRQK, black adds 8): every pseudo-legal
+ * move is made on a copy of the array and kept if the mover's king is not attacked afterwards.
+ * Moves are packed as in {@link GameRecord}.
+ */
+final class ReferenceMoves {
+    private static final int PAWN = 1, KNIGHT = 2, BISHOP = 3, ROOK = 4, QUEEN = 5, KING = 6;
+    private static final int BLACK = 8;
+    private static final String TYPES = "PNBRQK";
+    private static final int[] PROMOTED = { 0, QUEEN, ROOK, BISHOP, KNIGHT }; // by promotion code
+
+    private static final int[][] KNIGHT_STEPS = { {1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2} };
+    private static final int[][] KING_STEPS = { {1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1} };
+    private static final int[][] ROOK_DIRECTIONS = { {1, 0}, {-1, 0}, {0, 1}, {0, -1} };
+    private static final int[][] BISHOP_DIRECTIONS = { {1, 1}, {1, -1}, {-1, 1}, {-1, -1} };
+
+    private ReferenceMoves() { }
+
+    /** Legal moves for the side to move, written to out; returns how many. */
+    static int generate(Board board, int[] out) {
+        int[] squares = squares(board);
+        boolean white = board.getSideToMove() == Piece.Color.WHITE;
+        int[] pseudo = new int[Game.MAX_MOVES];
+        int count = pseudoLegal(squares, white, board.getCastlingMask(), board.getEnPassantSquare(), pseudo);
+        int legal = 0;
+        for (int i = 0; i < count; i++) {
+            int[] after = make(squares, pseudo[i], board.getEnPassantSquare());
+            if (!attacked(after, kingSquare(after, white), !white)) {
+                out[legal++] = pseudo[i];
+            }
+        }
+        return legal;
+    }
+
+    /** Whether the side to move is in check. */
+    static boolean inCheck(Board board) {
+        int[] squares = squares(board);
+        boolean white = board.getSideToMove() == Piece.Color.WHITE;
+        return attacked(squares, kingSquare(squares, white), !white);
+    }
+
+    private static int[] squares(Board board) {
+        int[] squares = new int[64];
+        for (int s = 0; s < 64; s++) {
+            Piece p = board.getPiece(s & 7, s >>> 3);
+            if (p != null) {
+                squares[s] = (TYPES.indexOf(p.getType()) + 1) | (p.getColor() == Piece.Color.BLACK ? BLACK : 0);
+            }
+        }
+        return squares;
+    }
+
+    private static int pseudoLegal(int[] sq, boolean white, int castling, int ep, int[] out) {
+        int own = white ? 0 : BLACK;
+        int n = 0;
+        for (int s = 0; s < 64; s++) {
+            int piece = sq[s];
+            if (piece == 0 || (piece & BLACK) != own) continue;
+            int f = s & 7, r = s >>> 3;
+            switch (piece & 7) {
+                case PAWN: {
+                    int dir = white ? 1 : -1;
+                    int r1 = r + dir;
+                    if (r1 < 0 || r1 > 7) break;
+                    if (sq[r1 * 8 + f] == 0) {
+                        n = addPawn(out, n, s, r1 * 8 + f);
+                        int r2 = r + 2 * dir;
+                        if (r == (white ? 1 : 6) && sq[r2 * 8 + f] == 0) {
+                            out[n++] = s | ((r2 * 8 + f) << 6);
+                        }
+                    }
+                    for (int df = -1; df <= 1; df += 2) {
+                        int tf = f + df;
+                        if (tf < 0 || tf > 7) continue;
+                        int t = r1 * 8 + tf;
+                        if ((sq[t] != 0 && (sq[t] & BLACK) != own) || (t == ep && sq[t] == 0)) {
+                            n = addPawn(out, n, s, t);
+                        }
+                    }
+                    break;
+                }
+                case KNIGHT:
+                    n = addSteps(sq, own, s, KNIGHT_STEPS, out, n);
+                    break;
+                case BISHOP:
+                    n = addSlides(sq, own, s, BISHOP_DIRECTIONS, out, n);
+                    break;
+                case ROOK:
+                    n = addSlides(sq, own, s, ROOK_DIRECTIONS, out, n);
+                    break;
+                case QUEEN:
+                    n = addSlides(sq, own, s, BISHOP_DIRECTIONS, out, n);
+                    n = addSlides(sq, own, s, ROOK_DIRECTIONS, out, n);
+                    break;
+                case KING:
+                    n = addSteps(sq, own, s, KING_STEPS, out, n);
+                    n = addCastling(sq, white, castling, s, out, n);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return n;
+    }
+
+    private static int addPawn(int[] out, int n, int from, int to) {
+        int rank = to >>> 3;
+        if (rank == 0 || rank == 7) {
+            for (int code = 1; code < PROMOTED.length; code++) {
+                out[n++] = from | (to << 6) | (code << 12);
+            }
+        } else {
+            out[n++] = from | (to << 6);
+        }
+        return n;
+    }
+
+    private static int addSteps(int[] sq, int own, int s, int[][] steps, int[] out, int n) {
+        for (int[] d : steps) {
+            int f = (s & 7) + d[0], r = (s >>> 3) + d[1];
+            if (f < 0 || f > 7 || r < 0 || r > 7) continue;
+            int t = r * 8 + f;
+            if (sq[t] == 0 || (sq[t] & BLACK) != own) {
+                out[n++] = s | (t << 6);
+            }
+        }
+        return n;
+    }
+
+    private static int addSlides(int[] sq, int own, int s, int[][] directions, int[] out, int n) {
+        for (int[] d : directions) {
+            int f = (s & 7) + d[0], r = (s >>> 3) + d[1];
+            while (f >= 0 && f <= 7 && r >= 0 && r <= 7) {
+                int t = r * 8 + f;
+                if (sq[t] != 0) {
+                    if ((sq[t] & BLACK) != own) out[n++] = s | (t << 6);
+                    break;
+                }
+                out[n++] = s | (t << 6);
+                f += d[0];
+                r += d[1];
+            }
+        }
+        return n;
+    }
+
+    // Castling with the right held, king and rook at home, the path clear and not attacked
+    private static int addCastling(int[] sq, boolean white, int castling, int s, int[] out, int n) {
+        int home = white ? 0 : 56;
+        int own = white ? 0 : BLACK;
+        if (s != home + 4) return n;
+        int kingSide = white ? Board.WHITE_KING_SIDE : Board.BLACK_KING_SIDE;
+        int queenSide = white ? Board.WHITE_QUEEN_SIDE : Board.BLACK_QUEEN_SIDE;
+        if ((castling & kingSide) != 0 && sq[home + 7] == (ROOK | own)
+                && sq[home + 5] == 0 && sq[home + 6] == 0
+                && !attacked(sq, home + 4, !white) && !attacked(sq, home + 5, !white) && !attacked(sq, home + 6, !white)) {
+            out[n++] = s | ((home + 6) << 6);
+        }
+        if ((castling & queenSide) != 0 && sq[home] == (ROOK | own)
+                && sq[home + 1] == 0 && sq[home + 2] == 0 && sq[home + 3] == 0
+                && !attacked(sq, home + 4, !white) && !attacked(sq, home + 3, !white) && !attacked(sq, home + 2, !white)) {
+            out[n++] = s | ((home + 2) << 6);
+        }
+        return n;
+    }
+
+    // The squares after a pseudo-legal move, on a copy
+    private static int[] make(int[] sq, int move, int ep) {
+        int[] after = sq.clone();
+        int from = move & 63, to = (move >>> 6) & 63, code = (move >>> 12) & 7;
+        int piece = after[from];
+        after[to] = piece;
+        after[from] = 0;
+        if ((piece & 7) == PAWN && to == ep && (from & 7) != (to & 7) && sq[to] == 0) {
+            after[(from & ~7) | (to & 7)] = 0; // the pawn taken en passant stands beside the mover
+        }
+        if (code != 0) {
+            after[to] = PROMOTED[code] | (piece & BLACK);
+        }
+        if ((piece & 7) == KING && Math.abs(to - from) == 2) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = to > from ? from + 1 : from - 1;
+            after[rookTo] = after[rookFrom];
+            after[rookFrom] = 0;
+        }
+        return after;
+    }
+
+    private static int kingSquare(int[] sq, boolean white) {
+        int king = KING | (white ? 0 : BLACK);
+        for (int s = 0; s < 64; s++) {
+            if (sq[s] == king) return s;
+        }
+        return -1;
+    }
+
+    private static boolean attacked(int[] sq, int s, boolean byWhite) {
+        if (s < 0) return false;
+        int enemy = byWhite ? 0 : BLACK;
+        int f = s & 7, r = s >>> 3;
+        int pawnRank = r + (byWhite ? -1 : 1);
+        if (pawnRank >= 0 && pawnRank <= 7) {
+            for (int df = -1; df <= 1; df += 2) {
+                int pf = f + df;
+                if (pf >= 0 && pf <= 7 && sq[pawnRank * 8 + pf] == (PAWN | enemy)) return true;
+            }
+        }
+        if (stepAttack(sq, f, r, KNIGHT_STEPS, KNIGHT | enemy)) return true;
+        if (stepAttack(sq, f, r, KING_STEPS, KING | enemy)) return true;
+        return slideAttack(sq, f, r, ROOK_DIRECTIONS, ROOK | enemy, QUEEN | enemy)
+                || slideAttack(sq, f, r, BISHOP_DIRECTIONS, BISHOP | enemy, QUEEN | enemy);
+    }
+
+    private static boolean stepAttack(int[] sq, int f, int r, int[][] steps, int attacker) {
+        for (int[] d : steps) {
+            int af = f + d[0], ar = r + d[1];
+            if (af >= 0 && af <= 7 && ar >= 0 && ar <= 7 && sq[ar * 8 + af] == attacker) return true;
+        }
+        return false;
+    }
+
+    private static boolean slideAttack(int[] sq, int f, int r, int[][] directions, int slider, int queen) {
+        for (int[] d : directions) {
+            int af = f + d[0], ar = r + d[1];
+            while (af >= 0 && af <= 7 && ar >= 0 && ar <= 7) {
+                int p = sq[ar * 8 + af];
+                if (p != 0) {
+                    if (p == slider || p == queen) return true;
+                    break;
+                }
+                af += d[0];
+                ar += d[1];
+            }
+        }
+        return false;
+    }
+}
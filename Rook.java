@@ -27,4 +27,9 @@ public class Rook extends Piece {
         Piece destPiece = board.getPiece(endFile, endRank);
         return destPiece == null || destPiece.getColor() != color;
     }
+
+    @Override
+    public long attacks(int file, int rank, long occupied) {
+        return LegalityChecker.rays(file, rank, LegalityChecker.ROOK_DIRECTIONS, occupied);
+    }
 }
@@ -0,0 +1,261 @@
+package chess;
+
+import java.util.function.Consumer;
+
+/**
+ * Iterative-deepening alpha-beta search with a material-only evaluation and a capture
+ * quiescence search, for driving the engine from {@link Uci} and self-play tools.
+ *
+ * A search stops at the first of its depth, time and node limits or a call to {@link #stop()};
+ * the result is that of the last fully searched depth. Depth 1 is always completed, so there
+ * is a searched move to report however early the search is stopped. An instance runs a single
+ * search.
+ */
+public class Search {
+    public static final int MATE = 100_000;
+    static final int MAX_DEPTH = 64;
+    // Quiescence runs past the depth limit, by at most the 30 captures a game can have
+    private static final int MAX_PLY = 2 * MAX_DEPTH;
+    private static final int CHECK_EVERY = 1024; // nodes between time and stop checks
+
+    // One move list and undo record per ply, reused by every node at that ply
+    private final int[][] moveLists = new int[MAX_PLY][];
+    private final Board.Undo[] undos = new Board.Undo[MAX_PLY];
+    private Board board; // the searched position, played forward and back in place
+    private Game position; // move generation over board
+    private volatile boolean stopped;
+    private boolean searchedOnce; // depth 1 is complete, so a stop may cut the search short
+    private long nodes;
+    private long deadline;
+    private long maxNodes;
+
+    /** Outcome of one completed iteration, or of the whole search. */
+    public static final class Result {
+        private final int bestMove;
+        private final int score;
+        private final int depth;
+        private final long nodes;
+        private final long nanos;
+
+        Result(int bestMove, int score, int depth, long nodes, long nanos) {
+            this.bestMove = bestMove;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.nanos = nanos;
+        }
+
+        /** Best move packed as in {@link GameRecord}, or {@link Notation#NONE} with no legal move. */
+        public int getBestMove() { return bestMove; }
+        /** UCI text of the best move, or "0000" with no legal move. */
+        public String getBestMoveUci() { return bestMove == Notation.NONE ? "0000" : Notation.toUci(bestMove); }
+        /** Centipawns for the side to move; mates are scored {@link #MATE} minus the plies to mate. */
+        public int getScore() { return score; }
+        public int getDepth() { return depth; }
+        public long getNodes() { return nodes; }
+        public long getNanos() { return nanos; }
+    }
+
+    /**
+     * Search the game's current position.
+     *
+     * @param maxDepth deepest iteration, at most {@value #MAX_DEPTH}
+     * @param timeMillis time budget, or 0 for none
+     * @param maxNodes node budget, or 0 for none
+     * @param onIteration told about every completed iteration; may be null
+     */
+    public Result run(Game game, int maxDepth, long timeMillis, long maxNodes, Consumer<Result> onIteration) {
+        long start = System.nanoTime();
+        this.nodes = 0;
+        // nanoTime may be negative: without a limit, put the deadline half the clock's range away
+        this.deadline = start + (timeMillis > 0 ? timeMillis * 1_000_000L : Long.MAX_VALUE / 2);
+        this.searchedOnce = false;
+        this.maxNodes = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+
+        int[] moves = moves(0);
+        int count = game.legalMoves(moves);
+        if (count == 0) {
+            int score = game.inCheck() ? -MATE : 0;
+            return new Result(Notation.NONE, score, 0, 0, System.nanoTime() - start);
+        }
+        this.board = new Board(game.getBoard());
+        this.position = new Game(board, game.getPlyCount(), false);
+        orderMoves(board, moves, count);
+        Result best = new Result(moves[0], 0, 0, 0, 0);
+        for (int depth = 1; depth <= Math.min(maxDepth, MAX_DEPTH); depth++) {
+            int alpha = -MATE - 1;
+            int bestIndex = 0;
+            for (int i = 0; i < count; i++) {
+                make(moves[i], 0);
+                int score = -alphaBeta(depth - 1, -MATE - 1, -alpha, 1);
+                unmake(moves[i], 0);
+                if (aborted()) break;
+                if (score > alpha) {
+                    alpha = score;
+                    bestIndex = i;
+                }
+            }
+            if (aborted()) break; // a partial iteration is not trusted
+            // Search the best move first in the next iteration
+            int bestMove = moves[bestIndex];
+            System.arraycopy(moves, 0, moves, 1, bestIndex);
+            moves[0] = bestMove;
+            best = new Result(bestMove, alpha, depth, nodes, System.nanoTime() - start);
+            searchedOnce = true;
+            if (onIteration != null) {
+                onIteration.accept(best);
+            }
+            if (Math.abs(alpha) >= MATE - MAX_DEPTH) break; // forced mate found
+        }
+        return new Result(best.bestMove, best.score, best.depth, nodes, System.nanoTime() - start);
+    }
+
+    /** Ask a running search to finish with its last completed iteration; callable from any thread. */
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    private int alphaBeta(int depth, int alpha, int beta, int ply) {
+        if (depth <= 0) {
+            return quiescence(alpha, beta, ply);
+        }
+        if (countNode()) return 0;
+        int[] moves = moves(ply);
+        int count = position.legalMoves(moves);
+        if (count == 0) {
+            return position.inCheck() ? -MATE + ply : 0;
+        }
+        orderMoves(board, moves, count);
+        for (int i = 0; i < count; i++) {
+            make(moves[i], ply);
+            int score = -alphaBeta(depth - 1, -beta, -alpha, ply + 1);
+            unmake(moves[i], ply);
+            if (aborted()) return 0;
+            if (score >= beta) return score;
+            if (score > alpha) alpha = score;
+        }
+        return alpha;
+    }
+
+    // Captures only, until the position is quiet, so a search never stops mid-exchange
+    private int quiescence(int alpha, int beta, int ply) {
+        if (countNode()) return 0;
+        int[] moves = moves(ply);
+        int count = position.legalMoves(moves);
+        if (count == 0) {
+            return position.inCheck() ? -MATE + ply : 0;
+        }
+        int standPat = evaluate(board);
+        if (standPat >= beta) return standPat;
+        if (standPat > alpha) alpha = standPat;
+        count = orderMoves(board, moves, count);
+        for (int i = 0; i < count; i++) {
+            make(moves[i], ply);
+            int score = -quiescence(-beta, -alpha, ply + 1);
+            unmake(moves[i], ply);
+            if (aborted()) return 0;
+            if (score >= beta) return score;
+            if (score > alpha) alpha = score;
+        }
+        return alpha;
+    }
+
+    private boolean countNode() {
+        if (++nodes % CHECK_EVERY == 0 && System.nanoTime() - deadline > 0) {
+            stopped = true;
+        }
+        if (nodes >= maxNodes) {
+            stopped = true;
+        }
+        return aborted();
+    }
+
+    private boolean aborted() {
+        return stopped && searchedOnce;
+    }
+
+    private int[] moves(int ply) {
+        if (moveLists[ply] == null) {
+            moveLists[ply] = new int[Game.MAX_MOVES];
+        }
+        return moveLists[ply];
+    }
+
+    private void make(int move, int ply) {
+        if (undos[ply] == null) {
+            undos[ply] = new Board.Undo();
+        }
+        board.make(move, undos[ply]);
+        position.boardChanged();
+    }
+
+    private void unmake(int move, int ply) {
+        board.unmake(move, undos[ply]);
+        position.boardChanged();
+    }
+
+    // Captures first, most valuable victim first; returns how many moves are captures
+    private static int orderMoves(Board board, int[] moves, int count) {
+        int captures = 0;
+        for (int i = 0; i < count; i++) {
+            if (victim(board, moves[i]) == null) continue;
+            int move = moves[i];
+            moves[i] = moves[captures];
+            moves[captures++] = move;
+        }
+        // Insertion sort of the captures by victim value
+        for (int i = 1; i < captures; i++) {
+            int move = moves[i];
+            int value = victimValue(board, move);
+            int j = i - 1;
+            while (j >= 0 && victimValue(board, moves[j]) < value) {
+                moves[j + 1] = moves[j];
+                j--;
+            }
+            moves[j + 1] = move;
+        }
+        return captures;
+    }
+
+    private static int victimValue(Board board, int move) {
+        return value(victim(board, move));
+    }
+
+    // Piece a move captures, counting a pawn taken en passant; null for a quiet move
+    private static Piece victim(Board board, int move) {
+        int from = Notation.from(move), to = Notation.to(move);
+        Piece target = board.getPiece(to & 7, to >>> 3);
+        if (target == null && (from & 7) != (to & 7) && board.getPiece(from & 7, from >>> 3) instanceof Pawn) {
+            return board.getPiece(to & 7, from >>> 3);
+        }
+        return target;
+    }
+
+    /** Material in centipawns from the point of view of the side to move. */
+    static int evaluate(Board board) {
+        int score = 0;
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece p = board.getPiece(file, rank);
+                if (p == null) continue;
+                score += (p.getColor() == Piece.Color.WHITE) ? value(p) : -value(p);
+            }
+        }
+        return board.getSideToMove() == Piece.Color.WHITE ? score : -score;
+    }
+
+    private static int value(Piece p) {
+        switch (p.getType()) {
+            case "P": return 100;
+            case "N": return 300;
+            case "B": return 300;
+            case "R": return 500;
+            case "Q": return 900;
+            default: return 0;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client of a sharded deployment: routes each play straight to the node that owns the game,
+ * using its own copy of the ring, so a request normally costs a single hop. A node that gets a
+ * play for a game it no longer owns forwards it, so a stale ring only costs an extra hop; when
+ * a node cannot be reached, or the nodes' rings disagree, the ring is refreshed and the play
+ * retried once.
+ *
+ * Doubles as a load generator (java chess.ShardClient [games] [threads] host:port ...).
+ */
+public class ShardClient implements Closeable {
+    // Short legal lines the load generator cycles through
+    private static final String[][] LINES = {
+        { "e2 e4", "e7 e5", "g1 f3", "b8 c6", "f1 b5", "a7 a6", "b5 a4", "g8 f6", "e1 g1", "f8 e7" },
+        { "d2 d4", "d7 d5", "c2 c4", "e7 e6", "b1 c3", "g8 f6", "c1 g5", "f8 e7", "e2 e3", "e8 g8" },
+        { "e2 e4", "c7 c5", "g1 f3", "d7 d6", "d2 d4", "c5 d4", "f3 d4", "g8 f6", "b1 c3", "a7 a6" },
+        { "c2 c4", "e7 e5", "b1 c3", "g8 f6", "g1 f3", "b8 c6", "g2 g3", "d7 d5", "c4 d5", "f6 d5" },
+    };
+
+    private final List<String> seeds;
+    private final ShardNode.LinkPool links = new ShardNode.LinkPool();
+    private volatile HashRing ring;
+
+    /** Connect through any of the given nodes ("host:port"); the ring is read from the first that answers. */
+    public ShardClient(String... seeds) throws IOException {
+        this.seeds = Arrays.asList(seeds);
+        refreshRing();
+    }
+
+    /** Play a move in a game, starting it on first use. */
+    public ShardNode.Reply play(String gameId, String move) throws IOException {
+        try {
+            return send(gameId, move);
+        } catch (IOException e) {
+            refreshRing(); // the owner may have left, or joined since the ring was read
+            return send(gameId, move);
+        }
+    }
+
+    private ShardNode.Reply send(String gameId, String move) throws IOException {
+        return ShardNode.call(links, ring.owner(gameId), ShardNode.playRequest(gameId, move, 0), ShardNode::readReply);
+    }
+
+    /** Games held by each node, in ring order. */
+    public List<Integer> gameCounts() throws IOException {
+        List<Integer> counts = new ArrayList<>();
+        for (String node : ring.nodes()) {
+            counts.add(ShardNode.call(links, node, out -> out.writeByte(ShardNode.OP_COUNT), in -> in.readInt()));
+        }
+        return counts;
+    }
+
+    /** Re-read the ring from the known nodes. */
+    public void refreshRing() throws IOException {
+        List<String> candidates = new ArrayList<>(seeds);
+        if (ring != null) {
+            candidates.addAll(ring.nodes());
+        }
+        IOException failure = null;
+        for (String node : candidates) {
+            try {
+                ring = HashRing.of(ShardNode.requestRing(node));
+                return;
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        throw failure != null ? failure : new IOException("No nodes given");
+    }
+
+    public List<String> getMembers() {
+        return ring.nodes();
+    }
+
+    @Override
+    public void close() {
+        links.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("usage: java chess.ShardClient <games> <threads> host:port ...");
+            System.exit(2);
+        }
+        int games = Integer.parseInt(args[0]);
+        int threads = Integer.parseInt(args[1]);
+        try (ShardClient client = new ShardClient(Arrays.copyOfRange(args, 2, args.length))) {
+            AtomicLong plays = new AtomicLong();
+            AtomicLong failures = new AtomicLong();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            long start = System.nanoTime();
+            for (int g = 0; g < games; g++) {
+                String gameId = "game-" + g;
+                String[] line = LINES[g % LINES.length];
+                pool.execute(() -> {
+                    for (String move : line) {
+                        try {
+                            ShardNode.Reply reply = client.play(gameId, move);
+                            if (reply.getMessage() == ReturnPlay.Message.ILLEGAL_MOVE) failures.incrementAndGet();
+                            plays.incrementAndGet();
+                        } catch (IOException e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("nodes=%d games=%d plays=%d failures=%d time=%.2fs plays/s=%.0f%n",
+                    client.getMembers().size(), games, plays.get(), failures.get(), seconds, plays.get() / seconds);
+            System.out.println("games per node: " + client.gameCounts());
+        }
+    }
+}
@@ -0,0 +1,555 @@
+package chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One engine node of a sharded deployment (java chess.ShardNode <port> [seed host:port]).
+ *
+ * Game ids are assigned to nodes by a {@link HashRing}. A node plays the games it owns and
+ * forwards a play for any other game to its owner, so clients may talk to any node. When a
+ * node joins, existing nodes hand over the games that now hash to it; when a node shuts down,
+ * it hands all its games to their new owners first. A game travels as its
+ * {@link PackedPosition}, ply count and packed move history, never as a replay. Until every
+ * node has finished handing games over to a newcomer, the newcomer first asks the previous
+ * owner to play any game it does not hold yet, so no game is started twice.
+ *
+ * Nodes and clients speak a small request/response protocol over TCP on loopback or a LAN.
+ */
+public class ShardNode implements Closeable {
+    static final byte OP_PLAY = 1;
+    static final byte OP_IMPORT = 2;
+    static final byte OP_JOIN = 3;
+    static final byte OP_LEAVE = 4;
+    static final byte OP_RING = 5;
+    static final byte OP_HANDED_OVER = 6;
+    static final byte OP_COUNT = 7;
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+    private static final int MAX_HOPS = 2; // forwards a play may take while rings disagree
+    private static final int PROBE = -1;
+    private static final int MISSING = 0xFF; // reply to a probe for a game not held
+
+    private final String self;
+    private final ServerSocket server;
+    private final ExecutorService workers;
+    private final LinkPool links = new LinkPool();
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private volatile HashRing ring;
+    private volatile HashRing previous = null; // ring before this node joined, while games are still arriving
+    private final Set<String> awaitingHandover = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    private ShardNode(int port) throws IOException {
+        this.server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.self = server.getInetAddress().getHostAddress() + ":" + server.getLocalPort();
+        this.ring = HashRing.of(List.of(self));
+        this.workers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "chess-shard-" + server.getLocalPort());
+            t.setDaemon(true);
+            return t;
+        });
+        workers.execute(this::acceptLoop);
+    }
+
+    /**
+     * Start a node on the loopback port (0 for any) and, given a seed node, join its ring.
+     */
+    public static ShardNode start(int port, String seed) throws IOException {
+        ShardNode node = new ShardNode(port);
+        if (seed != null) {
+            try {
+                node.join(seed);
+            } catch (IOException e) {
+                node.close();
+                throw e;
+            }
+        }
+        return node;
+    }
+
+    /** This node's address, "host:port". */
+    public String getAddress() {
+        return self;
+    }
+
+    /** Nodes of the ring as this node currently sees it. */
+    public List<String> getMembers() {
+        return ring.nodes();
+    }
+
+    /** Games held by this node. */
+    public int getGameCount() {
+        return sessions.size();
+    }
+
+    /** Reply to a play: the message and state of the game after the move. */
+    public static final class Reply {
+        private final ReturnPlay.Message message;
+        private final int plies;
+        private final String san;
+
+        Reply(ReturnPlay.Message message, int plies, String san) {
+            this.message = message;
+            this.plies = plies;
+            this.san = san;
+        }
+
+        public ReturnPlay.Message getMessage() { return message; }
+        public int getPlyCount() { return plies; }
+        /** SAN of the last move played in the game, or null before the first. */
+        public String getSan() { return san; }
+
+        @Override
+        public String toString() {
+            return plies + " " + san + (message == null ? "" : " " + message);
+        }
+    }
+
+    // A game held by this node and the moves that led to it
+    private static final class Session {
+        final Game game;
+        short[] history;
+        int size;
+        boolean moved = false; // guarded by this: handed over to another node
+
+        Session(Game game, short[] history, int size) {
+            this.game = game;
+            this.history = history;
+            this.size = size;
+        }
+
+        void record(int move) {
+            if (size == history.length) {
+                history = Arrays.copyOf(history, Math.max(16, size * 2));
+            }
+            history[size++] = (short) move;
+        }
+    }
+
+    /** Play a move in whichever node owns the game, creating the game on first use. */
+    public Reply play(String gameId, String move) throws IOException {
+        return play(gameId, move, 0);
+    }
+
+    // hops counts forwards so far; PROBE asks for a play only if the game is held here
+    private Reply play(String gameId, String move, int hops) throws IOException {
+        Session session = sessions.get(gameId);
+        if (session != null) {
+            synchronized (session) {
+                if (!session.moved) return playHere(session, move);
+            }
+        }
+        if (hops == PROBE) {
+            return null;
+        }
+        String owner = ring.owner(gameId);
+        if (!owner.equals(self)) {
+            if (hops < MAX_HOPS) {
+                return forward(owner, gameId, move, hops + 1);
+            }
+            // Never start a game away from its owner; the caller refreshes its ring and retries
+            throw new IOException("Rings disagree on the owner of " + gameId);
+        }
+        HashRing before = previous;
+        if (before != null) {
+            String previousOwner = before.owner(gameId);
+            if (!previousOwner.equals(self) && awaitingHandover.contains(previousOwner)) {
+                // Played there if still held; once handed over, the import has already landed here
+                Reply reply = forward(previousOwner, gameId, move, PROBE);
+                if (reply != null) return reply;
+            }
+        }
+        session = sessions.computeIfAbsent(gameId, id -> new Session(new Game(), new short[16], 0));
+        synchronized (session) {
+            if (session.moved) {
+                return forward(ring.owner(gameId), gameId, move, hops + 1);
+            }
+            return playHere(session, move);
+        }
+    }
+
+    // Called with the session locked
+    private static Reply playHere(Session session, String move) {
+        Game game = session.game;
+        int plies = game.getPlyCount();
+        ReturnPlay result = game.play(move);
+        if (game.getPlyCount() != plies) {
+            session.record(game.lastMove());
+        }
+        return new Reply(result.message, game.getPlyCount(), game.getLastMoveSan());
+    }
+
+    private Reply forward(String node, String gameId, String move, int hops) throws IOException {
+        return call(node, playRequest(gameId, move, hops), ShardNode::readReply);
+    }
+
+    // Membership
+
+    private void join(String seed) throws IOException {
+        List<String> members = requestRing(seed);
+        previous = HashRing.of(members);
+        awaitingHandover.addAll(members);
+        ring = previous.with(self);
+        for (String member : members) {
+            try {
+                call(member, out -> {
+                    out.writeByte(OP_JOIN);
+                    out.writeUTF(self);
+                }, in -> null);
+            } catch (IOException e) {
+                handedOver(member); // unreachable: it has nothing to hand over
+            }
+        }
+    }
+
+    private void handedOver(String node) {
+        awaitingHandover.remove(node);
+        if (awaitingHandover.isEmpty()) {
+            previous = null;
+        }
+    }
+
+    // Send every game this node no longer owns to its owner
+    private void rebalance() {
+        for (Map.Entry<String, Session> e : sessions.entrySet()) {
+            String owner = ring.owner(e.getKey());
+            if (owner == null || owner.equals(self)) continue;
+            Session session = e.getValue();
+            synchronized (session) {
+                if (session.moved) continue;
+                try {
+                    call(owner, out -> writeImport(out, e.getKey(), session), in -> null);
+                } catch (IOException ex) {
+                    continue; // keep it; plays still reach it here and a later rebalance retries
+                }
+                session.moved = true;
+            }
+            sessions.remove(e.getKey(), session);
+        }
+    }
+
+    /** Hand every game to its next owner, leave the ring and stop serving. */
+    @Override
+    public void close() {
+        if (closed) return;
+        HashRing remaining = ring.without(self);
+        ring = remaining;
+        if (!remaining.isEmpty()) {
+            rebalance();
+            for (String member : remaining.nodes()) {
+                try {
+                    call(member, out -> {
+                        out.writeByte(OP_LEAVE);
+                        out.writeUTF(self);
+                    }, in -> null);
+                } catch (IOException e) {
+                    // it will find out on its next forward
+                }
+            }
+        }
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+        workers.shutdownNow();
+        links.close();
+    }
+
+    // Server side
+
+    private void acceptLoop() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = server.accept();
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                if (closed) return;
+                continue;
+            }
+            workers.execute(() -> serve(socket));
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            int op;
+            while ((op = in.read()) >= 0) {
+                try {
+                    handle(op, in, out);
+                } catch (IOException | RuntimeException e) {
+                    if (e instanceof EOFException) throw (EOFException) e;
+                    out.writeByte(STATUS_ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // connection closed by the other side
+        }
+    }
+
+    private void handle(int op, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (op) {
+            case OP_PLAY: {
+                String gameId = in.readUTF();
+                String move = in.readUTF();
+                int hops = in.readByte();
+                Reply reply = play(gameId, move, hops);
+                out.writeByte(STATUS_OK);
+                writeReply(out, reply);
+                break;
+            }
+            case OP_IMPORT:
+                readImport(in);
+                out.writeByte(STATUS_OK);
+                break;
+            case OP_JOIN: {
+                String node = in.readUTF();
+                ring = ring.with(node);
+                out.writeByte(STATUS_OK);
+                workers.execute(() -> {
+                    rebalance();
+                    try {
+                        call(node, o -> {
+                            o.writeByte(OP_HANDED_OVER);
+                            o.writeUTF(self);
+                        }, i -> null);
+                    } catch (IOException e) {
+                        // the newcomer is gone
+                    }
+                });
+                break;
+            }
+            case OP_LEAVE: {
+                String node = in.readUTF();
+                ring = ring.without(node);
+                handedOver(node);
+                links.forget(node);
+                out.writeByte(STATUS_OK);
+                break;
+            }
+            case OP_RING: {
+                List<String> nodes = ring.nodes();
+                out.writeByte(STATUS_OK);
+                out.writeShort(nodes.size());
+                for (String node : nodes) {
+                    out.writeUTF(node);
+                }
+                break;
+            }
+            case OP_HANDED_OVER:
+                handedOver(in.readUTF());
+                out.writeByte(STATUS_OK);
+                break;
+            case OP_COUNT:
+                out.writeByte(STATUS_OK);
+                out.writeInt(sessions.size());
+                break;
+            default:
+                throw new IOException("Unknown operation " + op);
+        }
+    }
+
+    // Position, ply count, game-over flag, SAN of the last move ("" for none) and move history
+    private static void writeImport(DataOutputStream out, String gameId, Session session) throws IOException {
+        out.writeByte(OP_IMPORT);
+        out.writeUTF(gameId);
+        out.write(PackedPosition.pack(session.game.getBoard()));
+        out.writeInt(session.game.getPlyCount());
+        out.writeBoolean(session.game.isOver());
+        String san = session.game.getLastMoveSan();
+        out.writeUTF(san == null ? "" : san);
+        out.writeInt(session.size);
+        for (int i = 0; i < session.size; i++) {
+            out.writeShort(session.history[i]);
+        }
+    }
+
+    private void readImport(DataInputStream in) throws IOException {
+        String gameId = in.readUTF();
+        byte[] position = new byte[PackedPosition.BYTES];
+        in.readFully(position);
+        int plies = in.readInt();
+        boolean over = in.readBoolean();
+        String san = in.readUTF();
+        int size = in.readInt();
+        short[] history = new short[Math.max(16, size)];
+        for (int i = 0; i < size; i++) {
+            history[i] = in.readShort();
+        }
+        Game game = new Game(PackedPosition.unpack(position), plies, over);
+        if (size > 0) {
+            game.restoreLastMove(history[size - 1], san.isEmpty() ? null : san);
+        }
+        sessions.put(gameId, new Session(game, history, size));
+    }
+
+    // Client side, shared with ShardClient
+
+    interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private <T> T call(String node, Writer request, Reader<T> response) throws IOException {
+        return call(links, node, request, response);
+    }
+
+    static <T> T call(LinkPool links, String node, Writer request, Reader<T> response) throws IOException {
+        Link link = links.borrow(node);
+        try {
+            T result = link.call(request, response);
+            links.release(link);
+            return result;
+        } catch (IOException e) {
+            link.close();
+            throw e;
+        }
+    }
+
+    static Writer playRequest(String gameId, String move, int hops) {
+        return out -> {
+            out.writeByte(OP_PLAY);
+            out.writeUTF(gameId);
+            out.writeUTF(move);
+            out.writeByte(hops);
+        };
+    }
+
+    static List<String> requestRing(String node) throws IOException {
+        try (Link link = new Link(node)) {
+            return link.call(out -> out.writeByte(OP_RING), in -> {
+                int n = in.readUnsignedShort();
+                List<String> nodes = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    nodes.add(in.readUTF());
+                }
+                return nodes;
+            });
+        }
+    }
+
+    private static void writeReply(DataOutputStream out, Reply reply) throws IOException {
+        if (reply == null) {
+            out.writeByte(MISSING);
+            return;
+        }
+        out.writeByte(reply.message == null ? 0 : reply.message.ordinal() + 1);
+        out.writeInt(reply.plies);
+        out.writeUTF(reply.san == null ? "" : reply.san);
+    }
+
+    static Reply readReply(DataInputStream in) throws IOException {
+        int message = in.readUnsignedByte();
+        if (message == MISSING) return null;
+        int plies = in.readInt();
+        String san = in.readUTF();
+        return new Reply(message == 0 ? null : ReturnPlay.Message.values()[message - 1], plies,
+                san.isEmpty() ? null : san);
+    }
+
+    /** One connection to a node, used by one request at a time. */
+    static final class Link implements Closeable {
+        final String node;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Link(String node) throws IOException {
+            this.node = node;
+            int colon = node.lastIndexOf(':');
+            this.socket = new Socket(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1)));
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        <T> T call(Writer request, Reader<T> response) throws IOException {
+            request.write(out);
+            out.flush();
+            int status = in.readUnsignedByte();
+            if (status != STATUS_OK) {
+                throw new IOException(node + ": " + in.readUTF());
+            }
+            return response.read(in);
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    /** Idle connections per node, reused across requests. */
+    static final class LinkPool implements Closeable {
+        private final ConcurrentHashMap<String, Queue<Link>> idle = new ConcurrentHashMap<>();
+
+        Link borrow(String node) throws IOException {
+            Queue<Link> queue = idle.get(node);
+            Link link = queue == null ? null : queue.poll();
+            return link != null ? link : new Link(node);
+        }
+
+        void release(Link link) {
+            idle.computeIfAbsent(link.node, n -> new ConcurrentLinkedQueue<>()).add(link);
+        }
+
+        void forget(String node) {
+            Queue<Link> queue = idle.remove(node);
+            if (queue != null) {
+                queue.forEach(Link::close);
+            }
+        }
+
+        @Override
+        public void close() {
+            for (String node : idle.keySet()) {
+                forget(node);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: java chess.ShardNode <port> [seed host:port]");
+            System.exit(2);
+        }
+        ShardNode node = start(Integer.parseInt(args[0]), args.length > 1 ? args[1] : null);
+        Runtime.getRuntime().addShutdownHook(new Thread(node::close, "chess-shard-leave"));
+        System.out.println("node " + node.getAddress() + " ring " + node.getMembers());
+        Thread.currentThread().join();
+    }
+}
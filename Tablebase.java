@@ -0,0 +1,776 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Endgame tablebases for positions with up to four pieces (kings included).
+ *
+ * Tables are generated locally by retrograde analysis, one file per material signature
+ * such as "KQvK" or "KBNvK", and memory-mapped for probing. Each position of a table is
+ * one byte: 0 for a draw, 1..127 for a win of the side to move with mate in that many
+ * moves, 128 + n for a loss where the side to move is mated in n moves.
+ * Castling rights and en passant are not part of the index; they are ignored when probing.
+ */
+public final class Tablebase {
+    public enum Wdl { LOSS, DRAW, WIN }
+
+    public static final int MAX_PIECES = 4;
+
+    private static final byte[] MAGIC = { 'C', 'H', 'T', 'B' };
+    private static final byte VERSION = 1;
+    private static final String LETTERS = "KQRBNP";
+    private static final int KING = 0, QUEEN = 1, ROOK = 2, BISHOP = 3, KNIGHT = 4, PAWN = 5;
+    private static final int[] VALUES = { 0, 9, 5, 3, 3, 1 };
+    private static final int WHITE = 0, BLACK = 1;
+    private static final byte BLOCKED = (byte) 0xFF; // remaining-move counter of a position that cannot be lost
+    private static final int MAX_PLIES = 254;
+
+    private static final int[][] KING_STEPS = {
+        { 1, 0 }, { 1, 1 }, { 0, 1 }, { -1, 1 }, { -1, 0 }, { -1, -1 }, { 0, -1 }, { 1, -1 }
+    };
+    private static final int[][] KNIGHT_STEPS = {
+        { 1, 2 }, { 2, 1 }, { 2, -1 }, { 1, -2 }, { -1, -2 }, { -2, -1 }, { -2, 1 }, { -1, 2 }
+    };
+    private static final int[][] ROOK_DIRECTIONS = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+    private static final int[][] BISHOP_DIRECTIONS = { { 1, 1 }, { 1, -1 }, { -1, 1 }, { -1, -1 } };
+    private static final int[] PROMOTIONS = { QUEEN, ROOK, BISHOP, KNIGHT };
+
+    private final Path directory;
+    private final Map<String, ByteBuffer> tables = new ConcurrentHashMap<>();
+
+    public Tablebase(Path directory) {
+        this.directory = directory;
+    }
+
+    /** Outcome for the side to move; plies to mate is 0 for draws and for a position that is already mate. */
+    public static final class Result {
+        private final Wdl wdl;
+        private final int pliesToMate;
+
+        Result(Wdl wdl, int pliesToMate) {
+            this.wdl = wdl;
+            this.pliesToMate = pliesToMate;
+        }
+
+        public Wdl getWdl() {
+            return wdl;
+        }
+
+        public int getPliesToMate() {
+            return pliesToMate;
+        }
+
+        @Override
+        public String toString() {
+            return wdl == Wdl.DRAW ? "DRAW" : wdl + " in " + pliesToMate + " plies";
+        }
+    }
+
+    /** Probe the position with the board's side to move. */
+    public Result probe(Board board) throws IOException {
+        return probe(board, board.getSideToMove());
+    }
+
+    /**
+     * Probe a position, or return null if it has more than {@link #MAX_PIECES} pieces,
+     * lacks a king, leaves the side not to move in check, or its table has not been generated.
+     */
+    public Result probe(Board board, Piece.Color sideToMove) throws IOException {
+        int[] types = new int[MAX_PIECES];
+        int[] colors = new int[MAX_PIECES];
+        int[] squares = new int[MAX_PIECES];
+        Piece[] pieces = new Piece[MAX_PIECES];
+        long occupied = 0L;
+        int n = 0;
+        int kings = 0;
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece p = board.getPiece(file, rank);
+                if (p == null) continue;
+                if (n == MAX_PIECES) return null;
+                types[n] = LETTERS.indexOf(p.getType());
+                colors[n] = p.getColor() == Piece.Color.WHITE ? WHITE : BLACK;
+                squares[n] = rank * 8 + file;
+                pieces[n] = p;
+                occupied |= 1L << squares[n];
+                if (types[n] == KING) kings++;
+                n++;
+            }
+        }
+        if (kings != 2) return null;
+        int stm = sideToMove == Piece.Color.WHITE ? WHITE : BLACK;
+        // Such positions are never generated, so their table bytes mean nothing
+        if (givesCheck(pieces, colors, squares, n, occupied, stm)) return null;
+        Canonical c = canonicalize(Arrays.copyOf(types, n), Arrays.copyOf(colors, n),
+                Arrays.copyOf(squares, n), stm);
+        ByteBuffer table = table(c.signature, false);
+        if (table == null) return null;
+        return decode(table.get(c.index));
+    }
+
+    // Whether a piece of the side to move attacks the other side's king
+    private static boolean givesCheck(Piece[] pieces, int[] colors, int[] squares, int n, long occupied, int stm) {
+        long king = 0L;
+        for (int i = 0; i < n; i++) {
+            if (colors[i] != stm && pieces[i] instanceof King) king = 1L << squares[i];
+        }
+        for (int i = 0; i < n; i++) {
+            if (colors[i] != stm) continue;
+            if ((pieces[i].attacks(squares[i] & 7, squares[i] >>> 3, occupied) & king) != 0) return true;
+        }
+        return false;
+    }
+
+    /** Generate (if missing) the table for a signature like "KRvK" and every table it converts into. */
+    public void generate(String signature) throws IOException {
+        Material m = Material.parse(signature);
+        if (!m.signature.equals(signature)) {
+            throw new IllegalArgumentException("Use the canonical signature " + m.signature);
+        }
+        table(signature, true);
+    }
+
+    // Loaded table for a canonical signature, generating it first when allowed
+    private ByteBuffer table(String signature, boolean generate) throws IOException {
+        ByteBuffer table = tables.get(signature);
+        if (table != null) return table;
+        synchronized (this) {
+            table = tables.get(signature);
+            if (table != null) return table;
+            Path file = directory.resolve(signature + ".tb");
+            if (!Files.exists(file)) {
+                if (!generate) return null;
+                Material m = Material.parse(signature);
+                for (String child : m.conversions()) {
+                    table(child, true);
+                }
+                write(file, m, new Generator(m).run());
+            }
+            table = map(file, signature);
+            tables.put(signature, table);
+            return table;
+        }
+    }
+
+    private static void write(Path file, Material m, byte[] values) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        byte[] name = m.signature.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 2 + name.length);
+        header.put(MAGIC).put(VERSION).put((byte) name.length).put(name).flip();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = ByteBuffer.wrap(values);
+            while (header.hasRemaining()) channel.write(header);
+            while (data.hasRemaining()) channel.write(data);
+            // On disk before the rename, so a crash cannot leave a complete name over missing data
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ByteBuffer map(Path file, String signature) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int headerBytes = MAGIC.length + 2 + signature.length();
+            byte[] name = new byte[signature.length()];
+            boolean valid = mapped.limit() == headerBytes + Material.parse(signature).size;
+            for (byte b : MAGIC) {
+                valid &= mapped.get() == b;
+            }
+            valid &= mapped.get() == VERSION && mapped.get() == name.length;
+            mapped.get(name);
+            if (!valid || !signature.equals(new String(name, StandardCharsets.US_ASCII))) {
+                throw new IOException("Corrupt tablebase file: " + file);
+            }
+            return mapped.slice();
+        }
+    }
+
+    private static Result decode(byte value) {
+        int v = value & 0xFF;
+        if (v == 0) return new Result(Wdl.DRAW, 0);
+        if (v < 128) return new Result(Wdl.WIN, 2 * v - 1);
+        return new Result(Wdl.LOSS, 2 * (v - 128));
+    }
+
+    private static byte winValue(int plies) {
+        return (byte) ((plies + 1) / 2);
+    }
+
+    private static byte lossValue(int plies) {
+        return (byte) (128 + plies / 2);
+    }
+
+    /** Table index of a position after putting its pieces in signature order. */
+    private static final class Canonical {
+        final String signature;
+        final int index;
+
+        Canonical(String signature, int index) {
+            this.signature = signature;
+            this.index = index;
+        }
+    }
+
+    // Orients the position so the stronger side is white, then orders the pieces like the signature
+    private static Canonical canonicalize(int[] types, int[] colors, int[] squares, int stm) {
+        int n = types.length;
+        String white = sideLetters(types, colors, WHITE);
+        String black = sideLetters(types, colors, BLACK);
+        boolean flip = compareSides(black, white) > 0;
+        String signature = flip ? black + "v" + white : white + "v" + black;
+        Material m = Material.parse(signature);
+        boolean[] used = new boolean[n];
+        int index = 0;
+        for (int slot = 0; slot < n; slot++) {
+            for (int i = 0; i < n; i++) {
+                int color = flip ? 1 - colors[i] : colors[i];
+                if (!used[i] && types[i] == m.types[slot] && color == m.colors[slot]) {
+                    used[i] = true;
+                    index = index * 64 + (flip ? squares[i] ^ 56 : squares[i]);
+                    break;
+                }
+            }
+        }
+        int side = flip ? 1 - stm : stm;
+        return new Canonical(signature, side * m.positionsPerSide + index);
+    }
+
+    private static String sideLetters(int[] types, int[] colors, int color) {
+        StringBuilder sb = new StringBuilder();
+        for (int type = KING; type <= PAWN; type++) {
+            for (int i = 0; i < types.length; i++) {
+                if (colors[i] == color && types[i] == type) sb.append(LETTERS.charAt(type));
+            }
+        }
+        return sb.toString();
+    }
+
+    // Positive when side a is stronger: more material, then more pieces, then heavier pieces first
+    private static int compareSides(String a, String b) {
+        int va = 0, vb = 0;
+        for (char c : a.toCharArray()) va += VALUES[LETTERS.indexOf(c)];
+        for (char c : b.toCharArray()) vb += VALUES[LETTERS.indexOf(c)];
+        if (va != vb) return Integer.compare(va, vb);
+        if (a.length() != b.length()) return Integer.compare(a.length(), b.length());
+        for (int i = 0; i < a.length(); i++) {
+            int ca = LETTERS.indexOf(a.charAt(i));
+            int cb = LETTERS.indexOf(b.charAt(i));
+            if (ca != cb) return Integer.compare(cb, ca);
+        }
+        return 0;
+    }
+
+    /** Piece set of a table: pieces are white then black, each side king first in KQRBNP order. */
+    private static final class Material {
+        final String signature;
+        final int n;
+        final int[] types;
+        final int[] colors;
+        final int positionsPerSide;
+        final int size;
+
+        private Material(String signature, int[] types, int[] colors) {
+            this.signature = signature;
+            this.n = types.length;
+            this.types = types;
+            this.colors = colors;
+            this.positionsPerSide = 1 << (6 * n);
+            this.size = 2 * positionsPerSide;
+        }
+
+        static Material parse(String signature) {
+            String[] sides = signature.toUpperCase().split("V");
+            if (sides.length != 2) {
+                throw new IllegalArgumentException("Signature must look like KQvK: " + signature);
+            }
+            int n = sides[0].length() + sides[1].length();
+            if (n > MAX_PIECES) {
+                throw new IllegalArgumentException("At most " + MAX_PIECES + " pieces: " + signature);
+            }
+            int[] types = new int[n];
+            int[] colors = new int[n];
+            int k = 0;
+            for (int side = WHITE; side <= BLACK; side++) {
+                for (char c : sides[side].toCharArray()) {
+                    int type = LETTERS.indexOf(c);
+                    if (type < 0) throw new IllegalArgumentException("Unknown piece " + c + " in " + signature);
+                    types[k] = type;
+                    colors[k++] = side;
+                }
+            }
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) order[i] = colors[i] * 8 + types[i];
+            if (types[0] != KING || !sides[1].startsWith("K") || sides[0].indexOf('K', 1) >= 0
+                    || sides[1].indexOf('K', 1) >= 0) {
+                throw new IllegalArgumentException("Each side needs exactly one king, listed first: " + signature);
+            }
+            Arrays.sort(order);
+            for (int i = 0; i < n; i++) {
+                colors[i] = order[i] / 8;
+                types[i] = order[i] % 8;
+            }
+            String white = sideLetters(types, colors, WHITE);
+            String black = sideLetters(types, colors, BLACK);
+            String canonical = compareSides(black, white) > 0 ? black + "v" + white : white + "v" + black;
+            if (!canonical.equals(white + "v" + black)) {
+                return parse(canonical);
+            }
+            return new Material(canonical, types, colors);
+        }
+
+        // Signatures reachable by one capture or promotion
+        List<String> conversions() {
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (types[i] == KING) continue;
+                int[] t = new int[n - 1];
+                int[] c = new int[n - 1];
+                for (int j = 0, k = 0; j < n; j++) {
+                    if (j == i) continue;
+                    t[k] = types[j];
+                    c[k++] = colors[j];
+                }
+                addCanonical(result, t, c);
+                if (types[i] == PAWN) {
+                    for (int promotion : PROMOTIONS) {
+                        int[] promoted = types.clone();
+                        promoted[i] = promotion;
+                        addCanonical(result, promoted, colors);
+                        // promotion with capture
+                        for (int j = 0; j < n; j++) {
+                            if (colors[j] == colors[i] || types[j] == KING) continue;
+                            int[] t2 = new int[n - 1];
+                            int[] c2 = new int[n - 1];
+                            for (int x = 0, k = 0; x < n; x++) {
+                                if (x == j) continue;
+                                t2[k] = promoted[x];
+                                c2[k++] = colors[x];
+                            }
+                            addCanonical(result, t2, c2);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        private static void addCanonical(List<String> out, int[] types, int[] colors) {
+            String white = sideLetters(types, colors, WHITE);
+            String black = sideLetters(types, colors, BLACK);
+            String signature = compareSides(black, white) > 0 ? black + "v" + white : white + "v" + black;
+            if (!out.contains(signature)) out.add(signature);
+        }
+    }
+
+    /** Growable int list used for the per-level work queues. */
+    private static final class IntList {
+        int[] data = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+    }
+
+    /**
+     * Retrograde generator. A first parallel pass counts each position's in-table moves and
+     * scores its captures and promotions against smaller tables; then positions are resolved
+     * level by level in increasing distance to mate, walking un-moves from each newly
+     * resolved position. Un-move generation for each level runs in parallel.
+     */
+    private final class Generator {
+        private final Material m;
+        private final byte[] values;
+        private final byte[] remaining;
+        private final byte[] exitLossPlies; // longest loss forced through a capture or promotion, in plies
+        private final IntList[] levels = new IntList[MAX_PLIES + 2];
+
+        Generator(Material m) {
+            this.m = m;
+            this.values = new byte[m.size];
+            this.remaining = new byte[m.size];
+            this.exitLossPlies = new byte[m.size];
+        }
+
+        byte[] run() {
+            byte[] pending = new byte[m.size]; // scheduled resolution ply + 1, 0 for none
+            IntStream.range(0, m.size).parallel().forEach(index -> pending[index] = initialize(index));
+            for (int i = 0; i < levels.length; i++) levels[i] = new IntList();
+            for (int index = 0; index < m.size; index++) {
+                if (pending[index] != 0) levels[(pending[index] & 0xFF) - 1].add(index);
+            }
+            for (int level = 0; level <= MAX_PLIES; level++) {
+                IntList queue = levels[level];
+                boolean win = (level & 1) == 1;
+                IntList resolved = new IntList();
+                for (int i = 0; i < queue.size; i++) {
+                    int index = queue.data[i];
+                    if (values[index] != 0) continue;
+                    values[index] = win ? winValue(level) : lossValue(level);
+                    resolved.add(index);
+                }
+                int[][] predecessors = new int[resolved.size][];
+                IntStream.range(0, resolved.size).parallel()
+                        .forEach(i -> predecessors[i] = predecessors(resolved.data[i]));
+                for (int[] preds : predecessors) {
+                    for (int p : preds) {
+                        if (values[p] != 0) continue;
+                        if (!win) {
+                            // A move into a lost position wins
+                            if (level + 1 <= MAX_PLIES) levels[level + 1].add(p);
+                        } else if (remaining[p] != BLOCKED && --remaining[p] == 0) {
+                            int plies = Math.max(level + 1, exitLossPlies[p] & 0xFF);
+                            if (plies <= MAX_PLIES) levels[plies].add(p);
+                        }
+                    }
+                }
+                levels[level] = null;
+            }
+            return values;
+        }
+
+        // Returns the scheduled ply + 1 for this position, or 0
+        private byte initialize(int index) {
+            int stm = index / m.positionsPerSide;
+            int[] squares = decode(index);
+            if (!isLegal(squares, stm)) return 0;
+            int count = 0;
+            int bestWin = Integer.MAX_VALUE;
+            int longestLoss = 0;
+            boolean canLose = true;
+            boolean anyMove = false;
+            for (int i = 0; i < m.n; i++) {
+                if (m.colors[i] != stm) continue;
+                for (int[] move : moves(squares, i)) {
+                    int to = move[0];
+                    int captured = move[1];
+                    int promotion = move[2];
+                    int[] after = squares.clone();
+                    after[i] = to;
+                    int kingSquare = after[kingSlot(stm)];
+                    if (attacked(after, kingSquare, 1 - stm, captured)) continue;
+                    anyMove = true;
+                    if (captured < 0 && promotion < 0) {
+                        count++;
+                        continue;
+                    }
+                    int childValue = probeConversion(after, captured, i, promotion, 1 - stm) & 0xFF;
+                    if (childValue == 0) {
+                        canLose = false;
+                    } else if (childValue >= 128) {
+                        bestWin = Math.min(bestWin, 2 * (childValue - 128) + 1);
+                    } else {
+                        longestLoss = Math.max(longestLoss, 2 * childValue);
+                    }
+                }
+            }
+            if (!anyMove) {
+                remaining[index] = BLOCKED;
+                // Checkmate is a loss in 0; stalemate stays a draw
+                return attacked(squares, squares[kingSlot(stm)], 1 - stm, -1) ? (byte) 1 : 0;
+            }
+            // A position with a winning conversion or a drawing one can never be lost
+            remaining[index] = (canLose && bestWin > MAX_PLIES) ? (byte) count : BLOCKED;
+            exitLossPlies[index] = (byte) Math.min(longestLoss, MAX_PLIES);
+            if (bestWin <= MAX_PLIES) return (byte) (bestWin + 1);
+            if (canLose && count == 0 && longestLoss <= MAX_PLIES) return (byte) (longestLoss + 1);
+            return 0;
+        }
+
+        // Value of the position reached by a capture and/or promotion, from the mover's opponent's view
+        private byte probeConversion(int[] after, int captured, int mover, int promotion, int stm) {
+            int n = m.n - (captured >= 0 ? 1 : 0);
+            int[] types = new int[n];
+            int[] colors = new int[n];
+            int[] squares = new int[n];
+            for (int j = 0, k = 0; j < m.n; j++) {
+                if (j == captured) continue;
+                types[k] = (j == mover && promotion >= 0) ? promotion : m.types[j];
+                colors[k] = m.colors[j];
+                squares[k++] = after[j];
+            }
+            Canonical c = canonicalize(types, colors, squares, stm);
+            try {
+                return table(c.signature, true).get(c.index);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot load tablebase " + c.signature, e);
+            }
+        }
+
+        // Positions one un-move before a resolved position, restricted to legal ones
+        private int[] predecessors(int index) {
+            int stm = index / m.positionsPerSide;
+            int mover = 1 - stm;
+            int[] squares = decode(index);
+            long occupied = occupancy(squares, -1);
+            IntList result = new IntList();
+            for (int i = 0; i < m.n; i++) {
+                if (m.colors[i] != mover) continue;
+                int from = squares[i];
+                int file = from & 7;
+                int rank = from >>> 3;
+                List<Integer> origins = new ArrayList<>();
+                switch (m.types[i]) {
+                    case KING -> addSteps(origins, file, rank, KING_STEPS, occupied);
+                    case KNIGHT -> addSteps(origins, file, rank, KNIGHT_STEPS, occupied);
+                    case ROOK -> addRays(origins, file, rank, ROOK_DIRECTIONS, occupied);
+                    case BISHOP -> addRays(origins, file, rank, BISHOP_DIRECTIONS, occupied);
+                    case QUEEN -> {
+                        addRays(origins, file, rank, ROOK_DIRECTIONS, occupied);
+                        addRays(origins, file, rank, BISHOP_DIRECTIONS, occupied);
+                    }
+                    default -> {
+                        int back = mover == WHITE ? -1 : 1;
+                        int startRank = mover == WHITE ? 1 : 6;
+                        int one = rank + back;
+                        if (one != (mover == WHITE ? 0 : 7) && (occupied & (1L << (one * 8 + file))) == 0) {
+                            origins.add(one * 8 + file);
+                            int two = one + back;
+                            if (two == startRank && (occupied & (1L << (two * 8 + file))) == 0) {
+                                origins.add(two * 8 + file);
+                            }
+                        }
+                    }
+                }
+                for (int origin : origins) {
+                    int[] before = squares.clone();
+                    before[i] = origin;
+                    // In the earlier position the side now to move must not have been in check
+                    if (attacked(before, before[kingSlot(stm)], mover, -1)) continue;
+                    result.add(mover * m.positionsPerSide + encode(before));
+                }
+            }
+            return Arrays.copyOf(result.data, result.size);
+        }
+
+        // Pseudo-legal moves of piece i as {to, captured slot or -1, promotion type or -1}
+        private List<int[]> moves(int[] squares, int i) {
+            List<int[]> result = new ArrayList<>();
+            int color = m.colors[i];
+            int from = squares[i];
+            int file = from & 7;
+            int rank = from >>> 3;
+            switch (m.types[i]) {
+                case KING -> addStepMoves(result, squares, color, file, rank, KING_STEPS);
+                case KNIGHT -> addStepMoves(result, squares, color, file, rank, KNIGHT_STEPS);
+                case ROOK -> addRayMoves(result, squares, color, file, rank, ROOK_DIRECTIONS);
+                case BISHOP -> addRayMoves(result, squares, color, file, rank, BISHOP_DIRECTIONS);
+                case QUEEN -> {
+                    addRayMoves(result, squares, color, file, rank, ROOK_DIRECTIONS);
+                    addRayMoves(result, squares, color, file, rank, BISHOP_DIRECTIONS);
+                }
+                default -> {
+                    int dir = color == WHITE ? 1 : -1;
+                    int lastRank = color == WHITE ? 7 : 0;
+                    int one = rank + dir;
+                    if (slotAt(squares, one * 8 + file) < 0) {
+                        addPawnMove(result, one * 8 + file, -1, one == lastRank);
+                        int two = one + dir;
+                        if (rank == (color == WHITE ? 1 : 6) && slotAt(squares, two * 8 + file) < 0) {
+                            addPawnMove(result, two * 8 + file, -1, false);
+                        }
+                    }
+                    for (int df = -1; df <= 1; df += 2) {
+                        int f = file + df;
+                        if (f < 0 || f > 7) continue;
+                        int target = slotAt(squares, one * 8 + f);
+                        if (target >= 0 && m.colors[target] != color && m.types[target] != KING) {
+                            addPawnMove(result, one * 8 + f, target, one == lastRank);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        private void addPawnMove(List<int[]> out, int to, int captured, boolean promotes) {
+            if (!promotes) {
+                out.add(new int[]{ to, captured, -1 });
+                return;
+            }
+            for (int promotion : PROMOTIONS) {
+                out.add(new int[]{ to, captured, promotion });
+            }
+        }
+
+        private void addStepMoves(List<int[]> out, int[] squares, int color, int file, int rank, int[][] steps) {
+            for (int[] s : steps) {
+                int f = file + s[0];
+                int r = rank + s[1];
+                if (f < 0 || f > 7 || r < 0 || r > 7) continue;
+                int target = slotAt(squares, r * 8 + f);
+                if (target < 0) {
+                    out.add(new int[]{ r * 8 + f, -1, -1 });
+                } else if (m.colors[target] != color && m.types[target] != KING) {
+                    out.add(new int[]{ r * 8 + f, target, -1 });
+                }
+            }
+        }
+
+        private void addRayMoves(List<int[]> out, int[] squares, int color, int file, int rank, int[][] directions) {
+            for (int[] d : directions) {
+                int f = file + d[0];
+                int r = rank + d[1];
+                while (f >= 0 && f < 8 && r >= 0 && r < 8) {
+                    int target = slotAt(squares, r * 8 + f);
+                    if (target < 0) {
+                        out.add(new int[]{ r * 8 + f, -1, -1 });
+                    } else {
+                        if (m.colors[target] != color && m.types[target] != KING) {
+                            out.add(new int[]{ r * 8 + f, target, -1 });
+                        }
+                        break;
+                    }
+                    f += d[0];
+                    r += d[1];
+                }
+            }
+        }
+
+        private void addSteps(List<Integer> out, int file, int rank, int[][] steps, long occupied) {
+            for (int[] s : steps) {
+                int f = file + s[0];
+                int r = rank + s[1];
+                if (f >= 0 && f < 8 && r >= 0 && r < 8 && (occupied & (1L << (r * 8 + f))) == 0) {
+                    out.add(r * 8 + f);
+                }
+            }
+        }
+
+        private void addRays(List<Integer> out, int file, int rank, int[][] directions, long occupied) {
+            for (int[] d : directions) {
+                int f = file + d[0];
+                int r = rank + d[1];
+                while (f >= 0 && f < 8 && r >= 0 && r < 8 && (occupied & (1L << (r * 8 + f))) == 0) {
+                    out.add(r * 8 + f);
+                    f += d[0];
+                    r += d[1];
+                }
+            }
+        }
+
+        // Distinct squares, no pawn on a back rank, and the side not to move is not in check
+        private boolean isLegal(int[] squares, int stm) {
+            long seen = 0L;
+            for (int i = 0; i < m.n; i++) {
+                long b = 1L << squares[i];
+                if ((seen & b) != 0) return false;
+                seen |= b;
+                int rank = squares[i] >>> 3;
+                if (m.types[i] == PAWN && (rank == 0 || rank == 7)) return false;
+            }
+            return !attacked(squares, squares[kingSlot(1 - stm)], stm, -1);
+        }
+
+        // Whether any piece of the given color (other than the skipped slot) attacks the target square
+        private boolean attacked(int[] squares, int target, int byColor, int skip) {
+            long occupied = occupancy(squares, skip);
+            int tf = target & 7;
+            int tr = target >>> 3;
+            for (int i = 0; i < m.n; i++) {
+                if (i == skip || m.colors[i] != byColor || squares[i] == target) continue;
+                int f = squares[i] & 7;
+                int r = squares[i] >>> 3;
+                int df = tf - f;
+                int dr = tr - r;
+                int adf = Math.abs(df);
+                int adr = Math.abs(dr);
+                boolean hit = switch (m.types[i]) {
+                    case KING -> Math.max(adf, adr) == 1;
+                    case KNIGHT -> (adf == 1 && adr == 2) || (adf == 2 && adr == 1);
+                    case PAWN -> adf == 1 && dr == (byColor == WHITE ? 1 : -1);
+                    case ROOK -> (df == 0 || dr == 0) && clear(f, r, tf, tr, occupied);
+                    case BISHOP -> adf == adr && clear(f, r, tf, tr, occupied);
+                    default -> (df == 0 || dr == 0 || adf == adr) && clear(f, r, tf, tr, occupied);
+                };
+                if (hit) return true;
+            }
+            return false;
+        }
+
+        private boolean clear(int f, int r, int tf, int tr, long occupied) {
+            int sf = Integer.compare(tf, f);
+            int sr = Integer.compare(tr, r);
+            f += sf;
+            r += sr;
+            while (f != tf || r != tr) {
+                if ((occupied & (1L << (r * 8 + f))) != 0) return false;
+                f += sf;
+                r += sr;
+            }
+            return true;
+        }
+
+        private long occupancy(int[] squares, int skip) {
+            long occupied = 0L;
+            for (int i = 0; i < m.n; i++) {
+                if (i != skip) occupied |= 1L << squares[i];
+            }
+            return occupied;
+        }
+
+        private int slotAt(int[] squares, int square) {
+            for (int i = 0; i < m.n; i++) {
+                if (squares[i] == square) return i;
+            }
+            return -1;
+        }
+
+        private int kingSlot(int color) {
+            for (int i = 0; i < m.n; i++) {
+                if (m.types[i] == KING && m.colors[i] == color) return i;
+            }
+            return -1;
+        }
+
+        private int[] decode(int index) {
+            int[] squares = new int[m.n];
+            int rest = index % m.positionsPerSide;
+            for (int i = m.n - 1; i >= 0; i--) {
+                squares[i] = rest & 63;
+                rest >>>= 6;
+            }
+            return squares;
+        }
+
+        private int encode(int[] squares) {
+            int index = 0;
+            for (int square : squares) index = index * 64 + square;
+            return index;
+        }
+    }
+
+    /** Generates tables offline: {@code java chess.Tablebase <directory> [signature ...]}. */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: java chess.Tablebase <directory> [KQvK KRvK KPvK KBNvK ...]");
+            return;
+        }
+        Tablebase tablebase = new Tablebase(Paths.get(args[0]));
+        List<String> signatures = args.length > 1
+                ? Arrays.asList(args).subList(1, args.length)
+                : Arrays.asList("KQvK", "KRvK", "KPvK", "KBNvK");
+        for (String signature : signatures) {
+            long start = System.nanoTime();
+            tablebase.generate(signature);
+            System.out.println(signature + " ready in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier home for many long-lived games, addressed by id.
+ *
+ * Active games stay on-heap as {@link Game} objects. Games idle for longer than the idle
+ * threshold, or pushed out when the hot tier is at its cap (least recently played first),
+ * are compacted into a {@value #SLOT_BYTES}-byte slot of an off-heap buffer: a
+ * {@link PackedPosition} plus ply count, game-over and in-book flags and the last move. The
+ * next {@link #play} on such a game rebuilds it transparently, with the same book and
+ * tablebase. The cold region is a direct buffer, or a memory-mapped file when a path is
+ * given so dormant games can be paged out by the OS.
+ */
+public class TieredGameStore implements Closeable {
+    static final int SLOT_BYTES = 40;
+    private static final int PLIES_OFFSET = PackedPosition.BYTES;
+    private static final int FLAGS_OFFSET = PackedPosition.BYTES + 2;
+    private static final int LAST_MOVE_OFFSET = PackedPosition.BYTES + 3;
+    private static final int GAME_OVER = 1;
+    private static final int IN_BOOK = 2;
+
+    private static final int PLAYED_SINCE = 2;
+    private static final int MOVED = 1;
+    private static final int ALREADY_COLD = 0;
+    private static final int FULL = -1;
+
+    private final int maxHot;
+    private final int maxCold;
+    private final long idleNanos;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Session> hot = new LinkedHashMap<>(16, 0.75f, true); // guarded by itself
+    private final ByteBuffer cold;
+    private final int[] freeSlots; // guarded by itself, stack of unused cold slots
+    private int freeCount;
+    private final FileChannel channel;
+    private final ScheduledExecutorService sweeper;
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rehydrations = new AtomicLong();
+
+    /** Cold tier in a direct buffer of {@code maxColdGames * SLOT_BYTES} bytes. */
+    public TieredGameStore(int maxHotGames, int maxColdGames, long idleMillis) throws IOException {
+        this(maxHotGames, maxColdGames, idleMillis, null);
+    }
+
+    /** Cold tier in the given file, memory-mapped; null keeps it in a direct buffer. */
+    public TieredGameStore(int maxHotGames, int maxColdGames, long idleMillis, Path coldFile) throws IOException {
+        if (maxHotGames <= 0 || maxColdGames < 0 || (long) maxColdGames * SLOT_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad tier caps: hot " + maxHotGames + ", cold " + maxColdGames);
+        }
+        this.maxHot = maxHotGames;
+        this.maxCold = maxColdGames;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        int coldBytes = maxColdGames * SLOT_BYTES;
+        if (coldFile == null) {
+            this.channel = null;
+            this.cold = ByteBuffer.allocateDirect(coldBytes);
+        } else {
+            this.channel = FileChannel.open(coldFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.cold = channel.map(FileChannel.MapMode.READ_WRITE, 0, coldBytes);
+        }
+        this.freeSlots = new int[maxColdGames];
+        for (int i = 0; i < maxColdGames; i++) {
+            freeSlots[i] = maxColdGames - 1 - i;
+        }
+        this.freeCount = maxColdGames;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chess-tiered-store-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, idleMillis / 4);
+        sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // A game in exactly one tier: on-heap (game != null) or in a cold slot
+    private static final class Session {
+        final String id;
+        Game game;
+        int slot = -1;
+        volatile long lastPlayed = System.nanoTime(); // read by the sweeper without the lock
+        GameStore log; // write-ahead log to re-attach on rehydration, if any
+        String logId;
+        OpeningBook openingBook; // kept while cold, with the last move's SAN
+        Tablebase tablebase;
+        String lastMoveSan;
+
+        Session(String id, Game game) {
+            this.id = id;
+            this.game = game;
+        }
+    }
+
+    /** Start a new game under the given id. */
+    public void create(String id) {
+        put(id, new Game());
+    }
+
+    /** Add an existing game (for example one from {@link GameStore#create}) to the hot tier. */
+    public void put(String id, Game game) {
+        Session session = new Session(id, game);
+        if (sessions.putIfAbsent(id, session) != null) {
+            throw new IllegalArgumentException("Game already exists: " + id);
+        }
+        List<Session> overflow;
+        synchronized (session) {
+            overflow = markHot(session);
+        }
+        try {
+            compactAll(overflow);
+        } catch (IllegalStateException e) {
+            remove(id); // no room for it in either tier
+            throw e;
+        }
+    }
+
+    /** Play a move in the game with the given id, rebuilding it first if it was compacted. */
+    public ReturnPlay play(String id, String move) {
+        Session session = sessions.get(id);
+        if (session == null) {
+            throw new IllegalArgumentException("No such game: " + id);
+        }
+        ReturnPlay result;
+        List<Session> overflow;
+        synchronized (session) {
+            if (session.game == null) {
+                if (session.slot < 0) {
+                    throw new IllegalArgumentException("No such game: " + id); // removed meanwhile
+                }
+                session.game = rehydrate(session);
+                rehydrations.incrementAndGet();
+            }
+            result = session.game.play(move);
+            session.lastPlayed = System.nanoTime();
+            overflow = markHot(session);
+        }
+        try {
+            compactAll(overflow);
+        } catch (IllegalStateException e) {
+            // The move stands; the hot tier stays over its cap until the cold tier has room
+        }
+        return result;
+    }
+
+    /** Forget a game in whichever tier it is. */
+    public void remove(String id) {
+        Session session = sessions.remove(id);
+        if (session == null) return;
+        synchronized (session) {
+            synchronized (hot) {
+                hot.remove(id, session);
+            }
+            if (session.slot >= 0) {
+                releaseSlot(session.slot);
+                session.slot = -1;
+            }
+            session.game = null;
+        }
+    }
+
+    /** Whether the game is currently held on-heap. */
+    public boolean isHot(String id) {
+        Session session = sessions.get(id);
+        if (session == null) return false;
+        synchronized (session) {
+            return session.game != null;
+        }
+    }
+
+    /** Compact every hot game idle for longer than the threshold; returns how many moved. */
+    public int evictIdle() {
+        long cutoff = System.nanoTime() - idleNanos;
+        List<Session> idle = new ArrayList<>();
+        synchronized (hot) {
+            // Access order: the eldest entries are the least recently played
+            for (Session s : hot.values()) {
+                if (s.lastPlayed - cutoff > 0) break;
+                idle.add(s);
+            }
+        }
+        int moved = 0;
+        for (Session s : idle) {
+            if (compactIdle(s, cutoff) == MOVED) moved++;
+        }
+        return moved;
+    }
+
+    public int getHotCount() {
+        synchronized (hot) {
+            return hot.size();
+        }
+    }
+
+    public int getColdCount() {
+        synchronized (freeSlots) {
+            return maxCold - freeCount;
+        }
+    }
+
+    public int getMaxHotGames() {
+        return maxHot;
+    }
+
+    /** Bytes reserved for the cold tier. */
+    public long getColdCapacityBytes() {
+        return (long) maxCold * SLOT_BYTES;
+    }
+
+    public long getColdUsedBytes() {
+        return (long) getColdCount() * SLOT_BYTES;
+    }
+
+    /** Games moved from the hot to the cold tier so far. */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /** Compacted games rebuilt by a later play so far. */
+    public long getRehydrations() {
+        return rehydrations.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sweeper.shutdownNow();
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    // Mark a hot session most recently used; returns the eldest sessions beyond the hot cap.
+    // Called with the session locked, so a concurrent compaction cannot interleave.
+    private List<Session> markHot(Session session) {
+        synchronized (hot) {
+            hot.put(session.id, session);
+            if (hot.size() <= maxHot) {
+                return null;
+            }
+            List<Session> overflow = new ArrayList<>();
+            Iterator<Session> eldest = hot.values().iterator();
+            for (int n = hot.size() - maxHot; n > 0 && eldest.hasNext(); n--) {
+                Session s = eldest.next();
+                if (s != session) overflow.add(s);
+            }
+            return overflow;
+        }
+    }
+
+    // Called without any session locked: compact() takes each session's lock in turn
+    private void compactAll(List<Session> overflow) {
+        if (overflow == null) return;
+        for (Session s : overflow) {
+            if (compact(s) == FULL) {
+                throw new IllegalStateException("Tiered store full: " + maxHot + " hot and "
+                        + maxCold + " cold games");
+            }
+        }
+    }
+
+    // Compact a game the sweep found idle, unless a play since then made it recent again
+    private int compactIdle(Session session, long cutoff) {
+        synchronized (session) {
+            if (session.lastPlayed - cutoff > 0) return PLAYED_SINCE;
+            return compact(session);
+        }
+    }
+
+    // Move a hot game into a cold slot
+    private int compact(Session session) {
+        synchronized (session) {
+            if (session.game == null) return ALREADY_COLD;
+            int slot = acquireSlot();
+            if (slot < 0) return FULL;
+            Game game = session.game;
+            int base = slot * SLOT_BYTES;
+            ByteBuffer out = cold.duplicate();
+            out.position(base);
+            PackedPosition.pack(game.getBoard(), out);
+            cold.putShort(base + PLIES_OFFSET, (short) game.getPlyCount());
+            cold.put(base + FLAGS_OFFSET, (byte) ((game.isOver() ? GAME_OVER : 0) | (game.inBook() ? IN_BOOK : 0)));
+            cold.putShort(base + LAST_MOVE_OFFSET, (short) game.lastMove());
+            session.log = game.attachedStore();
+            session.logId = game.attachedId();
+            session.openingBook = game.openingBook();
+            session.tablebase = game.tablebase();
+            session.lastMoveSan = game.getLastMoveSan();
+            session.game = null;
+            session.slot = slot;
+            synchronized (hot) {
+                hot.remove(session.id, session);
+            }
+        }
+        evictions.incrementAndGet();
+        return MOVED;
+    }
+
+    private Game rehydrate(Session session) {
+        int base = session.slot * SLOT_BYTES;
+        ByteBuffer in = cold.duplicate();
+        in.position(base);
+        Board board = PackedPosition.unpack(in);
+        int plies = cold.getShort(base + PLIES_OFFSET) & 0xFFFF;
+        int flags = cold.get(base + FLAGS_OFFSET);
+        int lastMove = cold.getShort(base + LAST_MOVE_OFFSET);
+        releaseSlot(session.slot);
+        session.slot = -1;
+        Game game = new Game(board, plies, (flags & GAME_OVER) != 0, session.openingBook, session.tablebase,
+                (flags & IN_BOOK) != 0);
+        game.restoreLastMove(lastMove, session.lastMoveSan);
+        if (session.log != null) {
+            game.attach(session.log, session.logId);
+        }
+        return game;
+    }
+
+    private int acquireSlot() {
+        synchronized (freeSlots) {
+            return freeCount == 0 ? -1 : freeSlots[--freeCount];
+        }
+    }
+
+    private void releaseSlot(int slot) {
+        synchronized (freeSlots) {
+            freeSlots[freeCount++] = slot;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Self-play soak test: plays many games in parallel through {@link Game#play} and reports
+ * throughput, per-call latency and the outcomes reached
+ * (java chess.Tournament [games] [threads] [random|engine] [maxPlies] [seed]).
+ *
+ * Each game opens with a few random plies so no two games follow the same line, then either
+ * keeps playing random legal moves or lets {@link Search} pick them on a small node budget.
+ * Before every move the legal moves of {@link Game} are compared with those of the independent
+ * {@link ReferenceMoves} generator, and after every move the reported check, mate or stalemate
+ * is compared with what the reference expects; any difference is reported as a disagreement.
+ */
+public class Tournament {
+    public static final String PLY_LIMIT = "PLY_LIMIT"; // outcome of games cut off unfinished
+    private static final int MAX_OPENING_PLIES = 8;
+    private static final int MAX_SAMPLES = 20; // disagreements kept for the report
+
+    /** How moves are chosen once the opening is over. */
+    public enum Mode { RANDOM, ENGINE }
+
+    private final Mode mode;
+    private final int maxPlies;
+    private final long engineNodes;
+    private final long seed;
+
+    /**
+     * @param maxPlies plies after which an unfinished game is stopped (the rules have no 50-move draw)
+     * @param engineNodes node budget of each {@link Search} in {@link Mode#ENGINE}
+     */
+    public Tournament(Mode mode, int maxPlies, long engineNodes, long seed) {
+        this.mode = mode;
+        this.maxPlies = maxPlies;
+        this.engineNodes = engineNodes;
+        this.seed = seed;
+    }
+
+    /** Totals of one {@link #run}; latencies are in nanoseconds. */
+    public static final class Report {
+        private final int games;
+        private final long plies;
+        private final long nanos;
+        private final Metrics.PhaseSnapshot playLatency;
+        private final Map<String, Long> outcomes;
+        private final long disagreements;
+        private final List<String> samples;
+
+        Report(int games, long plies, long nanos, Metrics.PhaseSnapshot playLatency,
+               Map<String, Long> outcomes, long disagreements, List<String> samples) {
+            this.games = games;
+            this.plies = plies;
+            this.nanos = nanos;
+            this.playLatency = playLatency;
+            this.outcomes = outcomes;
+            this.disagreements = disagreements;
+            this.samples = samples;
+        }
+
+        public int getGames() { return games; }
+        public long getPlies() { return plies; }
+        public long getNanos() { return nanos; }
+        public double getGamesPerSecond() { return games * 1e9 / Math.max(1, nanos); }
+        public double getMovesPerSecond() { return plies * 1e9 / Math.max(1, nanos); }
+        /** Latency of each {@link Game#play} call. */
+        public Metrics.PhaseSnapshot getPlayLatency() { return playLatency; }
+        /** Games per final {@link ReturnPlay.Message} name, or {@link #PLY_LIMIT}. */
+        public Map<String, Long> getOutcomes() { return outcomes; }
+        public long getDisagreements() { return disagreements; }
+        /** The first few disagreements, each with the FEN of its position. */
+        public List<String> getSamples() { return samples; }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("games=%d plies=%d time=%.2fs games/s=%.1f moves/s=%.0f%n",
+                    games, plies, nanos / 1e9, getGamesPerSecond(), getMovesPerSecond()));
+            sb.append("play latency ns: ").append(playLatency).append(System.lineSeparator());
+            sb.append("outcomes: ").append(outcomes).append(System.lineSeparator());
+            sb.append("disagreements: ").append(disagreements);
+            for (String s : samples) {
+                sb.append(System.lineSeparator()).append("  ").append(s);
+            }
+            return sb.toString();
+        }
+    }
+
+    /** Play the given number of games on a pool of the given size and wait for all of them. */
+    public Report run(int games, int threads) throws InterruptedException {
+        Metrics.Histogram latency = new Metrics.Histogram();
+        ConcurrentHashMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        LongAdder plies = new LongAdder();
+        LongAdder disagreements = new LongAdder();
+        ConcurrentLinkedQueue<String> samples = new ConcurrentLinkedQueue<>();
+        AtomicInteger sampled = new AtomicInteger();
+        Sink sink = message -> {
+            disagreements.increment();
+            if (sampled.getAndIncrement() < MAX_SAMPLES) {
+                samples.add(message);
+            }
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < games; i++) {
+            int index = i;
+            pool.execute(() -> {
+                String outcome;
+                try {
+                    outcome = playGame(new SplittableRandom(seed + index), latency, plies, sink);
+                } catch (RuntimeException e) {
+                    sink.report("game " + index + " threw " + e);
+                    outcome = "EXCEPTION";
+                }
+                outcomes.computeIfAbsent(outcome, k -> new LongAdder()).increment();
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long nanos = System.nanoTime() - start;
+
+        Map<String, Long> totals = new TreeMap<>();
+        outcomes.forEach((k, v) -> totals.put(k, v.sum()));
+        return new Report(games, plies.sum(), nanos, latency.snapshot(), totals,
+                disagreements.sum(), Collections.unmodifiableList(new ArrayList<>(samples)));
+    }
+
+    private interface Sink {
+        void report(String disagreement);
+    }
+
+    // Play one game to its end or the ply limit; returns its outcome
+    private String playGame(SplittableRandom random, Metrics.Histogram latency, LongAdder plies, Sink sink) {
+        Game game = new Game();
+        Board board = game.getBoard();
+        int openingPlies = random.nextInt(MAX_OPENING_PLIES + 1);
+        int[] own = new int[Game.MAX_MOVES];
+        int[] reference = new int[Game.MAX_MOVES];
+        int referenceCount = ReferenceMoves.generate(board, reference);
+        while (game.getPlyCount() < maxPlies) {
+            int count = game.legalMoves(own);
+            if (!sameMoves(own, count, reference, referenceCount)) {
+                sink.report("legal moves differ: " + describe(own, count, reference, referenceCount)
+                        + " in " + Fen.toFen(board));
+            }
+            if (count == 0) {
+                sink.report("game not over without legal moves in " + Fen.toFen(board));
+                return "NO_MOVES";
+            }
+
+            int move;
+            if (mode == Mode.ENGINE && game.getPlyCount() >= openingPlies) {
+                move = new Search().run(game, Search.MAX_DEPTH, 0, engineNodes, null).getBestMove();
+            } else {
+                move = own[random.nextInt(count)];
+            }
+            long start = System.nanoTime();
+            ReturnPlay result = game.play(Notation.toCoordinate(move));
+            latency.record(System.nanoTime() - start);
+            plies.increment();
+
+            if (result.message == ReturnPlay.Message.ILLEGAL_MOVE) {
+                sink.report("legal move " + Notation.toUci(move) + " rejected in " + Fen.toFen(board));
+                return ReturnPlay.Message.ILLEGAL_MOVE.name();
+            }
+            referenceCount = ReferenceMoves.generate(board, reference);
+            ReturnPlay.Message expected = expectedStatus(board, referenceCount);
+            if (result.message != expected) {
+                sink.report(Notation.toUci(move) + " reported " + result.message + ", expected " + expected
+                        + ", leading to " + Fen.toFen(board));
+            }
+            if (game.isOver()) {
+                return result.message.name();
+            }
+        }
+        return PLY_LIMIT;
+    }
+
+    // Status after a move, as play reports it, for the side now to move
+    private static ReturnPlay.Message expectedStatus(Board board, int referenceCount) {
+        boolean check = ReferenceMoves.inCheck(board);
+        if (referenceCount == 0 && check) {
+            return board.getSideToMove() == Piece.Color.WHITE
+                    ? ReturnPlay.Message.CHECKMATE_BLACK_WINS
+                    : ReturnPlay.Message.CHECKMATE_WHITE_WINS;
+        }
+        if (referenceCount == 0) return ReturnPlay.Message.STALEMATE;
+        return check ? ReturnPlay.Message.CHECK : null;
+    }
+
+    private static boolean sameMoves(int[] a, int aCount, int[] b, int bCount) {
+        if (aCount != bCount) return false;
+        int[] x = Arrays.copyOf(a, aCount);
+        int[] y = Arrays.copyOf(b, bCount);
+        Arrays.sort(x);
+        Arrays.sort(y);
+        return Arrays.equals(x, y);
+    }
+
+    private static String describe(int[] own, int ownCount, int[] reference, int referenceCount) {
+        List<String> extra = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        int[] x = Arrays.copyOf(own, ownCount);
+        int[] y = Arrays.copyOf(reference, referenceCount);
+        Arrays.sort(x);
+        Arrays.sort(y);
+        for (int m : x) {
+            if (Arrays.binarySearch(y, m) < 0) extra.add(Notation.toUci(m));
+        }
+        for (int m : y) {
+            if (Arrays.binarySearch(x, m) < 0) missing.add(Notation.toUci(m));
+        }
+        return "extra " + extra + " missing " + missing;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Mode mode = args.length > 2 ? Mode.valueOf(args[2].toUpperCase()) : Mode.RANDOM;
+        int maxPlies = args.length > 3 ? Integer.parseInt(args[3]) : 300;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1L;
+        Report report = new Tournament(mode, maxPlies, 500, seed).run(games, threads);
+        System.out.println(report);
+        if (report.getDisagreements() > 0) {
+            System.exit(1);
+        }
+    }
+}
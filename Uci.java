@@ -0,0 +1,244 @@
+package chess;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * UCI front-end to the engine (java chess.Uci), for GUIs, tournament managers and test harnesses.
+ *
+ * Supports uci, isready, ucinewgame, position (startpos or fen, with moves), go (depth, movetime,
+ * nodes, wtime/btime/winc/binc/movestogo, infinite), stop and quit. Commands are read on the
+ * calling thread while a search runs on its own thread, so stop and isready are answered at once.
+ * The board persists between position commands: when the new move list extends the one already
+ * played from the same start position, only the new moves are applied.
+ */
+public class Uci {
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private volatile Search search;
+    private Game game = new Game();
+    private String startPosition = "startpos"; // "startpos" or the FEN the game started from
+    private final List<String> played = new ArrayList<>(); // moves applied to game, in UCI text
+    private Thread searchThread;
+    private boolean infinite; // guarded by this: hold bestmove until stop
+    private boolean stopRequested; // guarded by this
+
+    public Uci(InputStream in, OutputStream out) {
+        this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII), 1 << 16);
+        this.out = new PrintStream(new BufferedOutputStream(out, 1 << 16), false, StandardCharsets.US_ASCII);
+    }
+
+    public static void main(String[] args) throws IOException {
+        new Uci(System.in, System.out).run();
+    }
+
+    /** Handle commands until quit or end of input. */
+    public void run() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!handle(line.trim())) break;
+        }
+        stopSearch();
+        out.flush();
+    }
+
+    // Returns false on quit
+    boolean handle(String line) {
+        String[] tokens = line.split("\\s+");
+        switch (tokens[0]) {
+            case "uci":
+                send("id name Chess");
+                send("id author SmallSheep993");
+                send("uciok");
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "ucinewgame":
+                stopSearch();
+                reset("startpos");
+                break;
+            case "position":
+                stopSearch();
+                position(tokens);
+                break;
+            case "go":
+                stopSearch();
+                go(tokens);
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "quit":
+                return false;
+            default:
+                break; // unknown commands are ignored, as the protocol asks
+        }
+        return true;
+    }
+
+    private void position(String[] tokens) {
+        int i = 1;
+        String start;
+        if (tokens.length > 1 && tokens[1].equals("startpos")) {
+            start = "startpos";
+            i = 2;
+        } else if (tokens.length > 1 && tokens[1].equals("fen")) {
+            StringBuilder fen = new StringBuilder();
+            for (i = 2; i < tokens.length && !tokens[i].equals("moves"); i++) {
+                fen.append(fen.length() == 0 ? "" : " ").append(tokens[i]);
+            }
+            start = fen.toString();
+        } else {
+            send("info string expected startpos or fen");
+            return;
+        }
+        List<String> moves = new ArrayList<>();
+        if (i < tokens.length && tokens[i].equals("moves")) {
+            for (i++; i < tokens.length; i++) {
+                moves.add(tokens[i]);
+            }
+        }
+
+        // Keep the board when the GUI only appended moves to the game it sent last time
+        boolean appended = start.equals(startPosition) && moves.size() >= played.size()
+                && moves.subList(0, played.size()).equals(played);
+        if (!appended && !reset(start)) {
+            return;
+        }
+        for (int m = played.size(); m < moves.size(); m++) {
+            String move = moves.get(m);
+            if (game.play(move).message == ReturnPlay.Message.ILLEGAL_MOVE) {
+                send("info string illegal move " + move);
+                return;
+            }
+            played.add(move);
+        }
+    }
+
+    // Start over from the given position; a bad FEN falls back to the start position
+    private boolean reset(String start) {
+        played.clear();
+        try {
+            game = start.equals("startpos") ? new Game() : Game.fromFen(start);
+            startPosition = start;
+            return true;
+        } catch (IllegalArgumentException e) {
+            send("info string bad fen: " + e.getMessage());
+            game = new Game();
+            startPosition = "startpos";
+            return false;
+        }
+    }
+
+    private void go(String[] tokens) {
+        int depth = Search.MAX_DEPTH;
+        long movetime = 0;
+        long nodes = 0;
+        long wtime = -1, btime = -1, winc = 0, binc = 0;
+        int movesToGo = DEFAULT_MOVES_TO_GO;
+        boolean infinite = false;
+        for (int i = 1; i < tokens.length; i++) {
+            String value = i + 1 < tokens.length ? tokens[i + 1] : "0";
+            try {
+                switch (tokens[i]) {
+                    case "depth": depth = Integer.parseInt(value); i++; break;
+                    case "movetime": movetime = Long.parseLong(value); i++; break;
+                    case "nodes": nodes = Long.parseLong(value); i++; break;
+                    case "wtime": wtime = Long.parseLong(value); i++; break;
+                    case "btime": btime = Long.parseLong(value); i++; break;
+                    case "winc": winc = Long.parseLong(value); i++; break;
+                    case "binc": binc = Long.parseLong(value); i++; break;
+                    case "movestogo": movesToGo = Math.max(1, Integer.parseInt(value)); i++; break;
+                    case "infinite": infinite = true; break;
+                    default: break;
+                }
+            } catch (NumberFormatException e) {
+                send("info string bad number for " + tokens[i] + ": " + value);
+                return;
+            }
+        }
+        // Clock play: an even share of the remaining time plus most of the increment
+        boolean white = game.getBoard().getSideToMove() == Piece.Color.WHITE;
+        long clock = white ? wtime : btime;
+        if (movetime == 0 && clock >= 0) {
+            long inc = white ? winc : binc;
+            movetime = Math.max(1, Math.min(clock / 2, clock / movesToGo + inc * 3 / 4));
+        }
+
+        Game root = game;
+        Search search = new Search();
+        int maxDepth = depth;
+        long timeMillis = movetime;
+        long maxNodes = nodes;
+        this.search = search;
+        synchronized (this) {
+            this.infinite = infinite;
+            this.stopRequested = false;
+        }
+        searchThread = new Thread(() -> {
+            Search.Result result = search.run(root, maxDepth, timeMillis, maxNodes, this::info);
+            synchronized (this) {
+                // "go infinite" reports its move only once told to stop
+                while (this.infinite && !stopRequested) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+            send("bestmove " + result.getBestMoveUci());
+        }, "chess-uci-search");
+        searchThread.setDaemon(true);
+        searchThread.start();
+    }
+
+    private void info(Search.Result r) {
+        long millis = r.getNanos() / 1_000_000;
+        long nps = r.getNanos() > 0 ? r.getNodes() * 1_000_000_000L / r.getNanos() : 0;
+        String score;
+        if (Math.abs(r.getScore()) >= Search.MATE - Search.MAX_DEPTH) {
+            int plies = Search.MATE - Math.abs(r.getScore());
+            score = "mate " + (r.getScore() > 0 ? (plies + 1) / 2 : -(plies / 2));
+        } else {
+            score = "cp " + r.getScore();
+        }
+        send("info depth " + r.getDepth() + " score " + score + " nodes " + r.getNodes()
+                + " nps " + nps + " time " + millis + " pv " + r.getBestMoveUci());
+    }
+
+    // Stop any running search and wait for its bestmove, so commands apply to an idle engine
+    private void stopSearch() {
+        Thread t = searchThread;
+        if (t == null) return;
+        search.stop();
+        synchronized (this) {
+            stopRequested = true;
+            notifyAll();
+        }
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+    }
+
+    private void send(String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * 64-bit position keys: pieces, side to move, castling rights and en passant file.
+ * The random table is seeded with a constant so keys stay stable across runs and
+ * can be stored in files such as the opening book.
+ */
+final class Zobrist {
+    private static final long[][] PIECES = new long[12][64];
+    private static final long BLACK_TO_MOVE;
+    private static final long[] CASTLING = new long[4]; // by bit of Board.getCastlingMask()
+    private static final long[] EN_PASSANT_FILE = new long[8];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x43484553534B4559L);
+        for (long[] squares : PIECES) {
+            for (int sq = 0; sq < 64; sq++) {
+                squares[sq] = random.nextLong();
+            }
+        }
+        BLACK_TO_MOVE = random.nextLong();
+        for (int i = 0; i < CASTLING.length; i++) {
+            CASTLING[i] = random.nextLong();
+        }
+        for (int i = 0; i < EN_PASSANT_FILE.length; i++) {
+            EN_PASSANT_FILE[i] = random.nextLong();
+        }
+    }
+
+    private Zobrist() { }
+
+    static long hash(Board board) {
+        long key = 0L;
+        for (int file = 0; file < 8; file++) {
+            for (int rank = 0; rank < 8; rank++) {
+                Piece p = board.getPiece(file, rank);
+                if (p != null) {
+                    key ^= PIECES[pieceIndex(p)][rank * 8 + file];
+                }
+            }
+        }
+        if (board.getSideToMove() == Piece.Color.BLACK) {
+            key ^= BLACK_TO_MOVE;
+        }
+        int rights = board.getCastlingMask();
+        for (int i = 0; i < CASTLING.length; i++) {
+            if ((rights & (1 << i)) != 0) key ^= CASTLING[i];
+        }
+        int ep = board.getEnPassantSquare();
+        if (ep != Board.NO_SQUARE) {
+            key ^= EN_PASSANT_FILE[ep & 7];
+        }
+        return key;
+    }
+
+    private static int pieceIndex(Piece p) {
+        int type = "PNBRQK".indexOf(p.getType());
+        return p.getColor() == Piece.Color.WHITE ? type : type + 6;
+    }
+}
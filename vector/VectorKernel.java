@@ -0,0 +1,136 @@
+package chess;
+
+import static chess.PositionBatch.BISHOP;
+import static chess.PositionBatch.FILE_A;
+import static chess.PositionBatch.FILE_AB;
+import static chess.PositionBatch.FILE_GH;
+import static chess.PositionBatch.FILE_H;
+import static chess.PositionBatch.KING;
+import static chess.PositionBatch.KINDS;
+import static chess.PositionBatch.KNIGHT;
+import static chess.PositionBatch.PAWN;
+import static chess.PositionBatch.QUEEN;
+import static chess.PositionBatch.RANK_1;
+import static chess.PositionBatch.RANK_8;
+import static chess.PositionBatch.ROOK;
+import static chess.PositionBatch.VALUES;
+import static jdk.incubator.vector.VectorOperators.L2I;
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+import static jdk.incubator.vector.VectorOperators.ROL;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link PositionBatch} kernel on CPU vector lanes: the scalar kernel's set-wise passes, applied
+ * to as many positions at once as the preferred vector shape holds (4 with AVX2, 8 with AVX-512).
+ * Positions left over at the end of a range go through the scalar kernel.
+ *
+ * Uses jdk.incubator.vector, so it lives apart from the other sources and is built and run with
+ * --add-modules jdk.incubator.vector; PositionBatch picks it up only when that module resolves.
+ */
+final class VectorKernel implements PositionBatch.Kernel {
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    // Same lane count as LONGS, for storing the int results
+    private static final VectorSpecies<Integer> INTS =
+            IntVector.SPECIES_MAX.withShape(VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+
+    @Override
+    public void evaluate(PositionBatch batch, int from, int to) {
+        int i = from;
+        for (int bound = from + LONGS.loopBound(to - from); i < bound; i += LONGS.length()) {
+            lanes(batch, i);
+        }
+        if (i < to) {
+            PositionBatch.SCALAR.evaluate(batch, i, to);
+        }
+    }
+
+    private static void lanes(PositionBatch batch, int i) {
+        long[][] pieces = batch.pieces;
+        LongVector white = LongVector.zero(LONGS), black = LongVector.zero(LONGS);
+        LongVector score = LongVector.zero(LONGS);
+        for (int k = 0; k < KINDS; k++) {
+            LongVector w = LongVector.fromArray(LONGS, pieces[k], i);
+            LongVector b = LongVector.fromArray(LONGS, pieces[KINDS + k], i);
+            white = white.or(w);
+            black = black.or(b);
+            score = score.add(bitCount(w).sub(bitCount(b)).mul(VALUES[k]));
+        }
+        LongVector empty = white.or(black).not();
+
+        LongVector wp = load(pieces, PAWN, i), bp = load(pieces, KINDS + PAWN, i);
+        LongVector whiteAttacks = wp.lanewise(LSHL, 9).and(~FILE_A).or(wp.lanewise(LSHL, 7).and(~FILE_H))
+                .or(leapers(load(pieces, KNIGHT, i), load(pieces, KING, i)));
+        LongVector blackAttacks = bp.lanewise(LSHR, 7).and(~FILE_A).or(bp.lanewise(LSHR, 9).and(~FILE_H))
+                .or(leapers(load(pieces, KINDS + KNIGHT, i), load(pieces, KINDS + KING, i)));
+
+        // Queens slide with both rooks and bishops
+        LongVector queens = load(pieces, QUEEN, i), blackQueens = load(pieces, KINDS + QUEEN, i);
+        LongVector straightWhite = load(pieces, ROOK, i).or(queens);
+        LongVector straightBlack = load(pieces, KINDS + ROOK, i).or(blackQueens);
+        LongVector diagonalWhite = load(pieces, BISHOP, i).or(queens);
+        LongVector diagonalBlack = load(pieces, KINDS + BISHOP, i).or(blackQueens);
+        // Unrolled, so every rotation count is a constant the JIT can encode in the instruction
+        whiteAttacks = whiteAttacks.or(rays(straightWhite, diagonalWhite, empty));
+        blackAttacks = blackAttacks.or(rays(straightBlack, diagonalBlack, empty));
+
+        whiteAttacks.intoArray(batch.whiteAttacks, i);
+        blackAttacks.intoArray(batch.blackAttacks, i);
+        toInts(score).intoArray(batch.material, i);
+        toInts(bitCount(whiteAttacks.and(white.not()))).intoArray(batch.whiteMobility, i);
+        toInts(bitCount(blackAttacks.and(black.not()))).intoArray(batch.blackMobility, i);
+    }
+
+    private static LongVector load(long[][] pieces, int kind, int i) {
+        return LongVector.fromArray(LONGS, pieces[kind], i);
+    }
+
+    private static LongVector leapers(LongVector n, LongVector k) {
+        LongVector east = k.lanewise(LSHL, 1).and(~FILE_A), west = k.lanewise(LSHR, 1).and(~FILE_H);
+        LongVector row = k.or(east).or(west);
+        return n.lanewise(LSHL, 17).and(~FILE_A).or(n.lanewise(LSHL, 15).and(~FILE_H))
+                .or(n.lanewise(LSHL, 10).and(~FILE_AB)).or(n.lanewise(LSHL, 6).and(~FILE_GH))
+                .or(n.lanewise(LSHR, 15).and(~FILE_A)).or(n.lanewise(LSHR, 17).and(~FILE_H))
+                .or(n.lanewise(LSHR, 6).and(~FILE_AB)).or(n.lanewise(LSHR, 10).and(~FILE_GH))
+                .or(east).or(west).or(row.lanewise(LSHL, 8)).or(row.lanewise(LSHR, 8));
+    }
+
+    // Directions and masks as PositionBatch.ROTATIONS and LANDING, written out as constants
+    private static LongVector rays(LongVector straight, LongVector diagonal, LongVector empty) {
+        return slide(straight, empty, 8, ~RANK_1)
+                .or(slide(straight, empty, 56, ~RANK_8))
+                .or(slide(straight, empty, 1, ~FILE_A))
+                .or(slide(straight, empty, 63, ~FILE_H))
+                .or(slide(diagonal, empty, 9, ~(RANK_1 | FILE_A)))
+                .or(slide(diagonal, empty, 7, ~(RANK_1 | FILE_H)))
+                .or(slide(diagonal, empty, 57, ~(RANK_8 | FILE_A)))
+                .or(slide(diagonal, empty, 55, ~(RANK_8 | FILE_H)));
+    }
+
+    // Kogge-Stone fill along one direction, as PositionBatch.slide
+    private static LongVector slide(LongVector gen, LongVector empty, int r, long mask) {
+        empty = empty.and(mask);
+        gen = gen.or(empty.and(gen.lanewise(ROL, r)));
+        empty = empty.and(empty.lanewise(ROL, r));
+        gen = gen.or(empty.and(gen.lanewise(ROL, (2 * r) & 63)));
+        empty = empty.and(empty.lanewise(ROL, (2 * r) & 63));
+        gen = gen.or(empty.and(gen.lanewise(ROL, (4 * r) & 63)));
+        return gen.lanewise(ROL, r).and(mask);
+    }
+
+    // Per-lane population count; the incubator in Java 17 has no BIT_COUNT operator
+    private static LongVector bitCount(LongVector x) {
+        x = x.sub(x.lanewise(LSHR, 1).and(0x5555555555555555L));
+        x = x.and(0x3333333333333333L).add(x.lanewise(LSHR, 2).and(0x3333333333333333L));
+        x = x.add(x.lanewise(LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+        return x.mul(0x0101010101010101L).lanewise(LSHR, 56);
+    }
+
+    private static IntVector toInts(LongVector v) {
+        return (IntVector) v.convertShape(L2I, INTS, 0);
+    }
+}